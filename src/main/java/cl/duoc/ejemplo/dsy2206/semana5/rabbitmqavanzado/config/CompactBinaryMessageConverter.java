@@ -0,0 +1,321 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding for the high-volume stock and price event types.
+ * <p>
+ * The body starts with a type tag and a null bitmap, followed by the fields in declaration order:
+ * integers as zig-zag varints, strings as length-prefixed UTF-8, {@link BigDecimal} as scale plus
+ * unscaled varint, and {@link LocalDateTime} as epoch second plus nano varints (UTC). The type travels
+ * in the tag, so no {@code __TypeId__} header is needed.
+ * <p>
+ * Every read is bounds-checked: a truncated or corrupt body fails with a {@link MessageConversionException},
+ * which the consumers treat as one undecodable message.
+ */
+public class CompactBinaryMessageConverter extends AbstractMessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-pulso-event";
+
+    private static final byte STOCK_CHANGE = 1;
+    private static final byte PRICE_CHANGE = 2;
+
+    private static final byte BIG_DECIMAL_COMPACT = 0;
+    private static final byte BIG_DECIMAL_WIDE = 1;
+
+    public boolean supports(Object object) {
+        return object instanceof StockChangeEventDTO || object instanceof PriceChangeEventDTO;
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        Writer writer = new Writer();
+        if (object instanceof StockChangeEventDTO event) {
+            writer.writeByte(STOCK_CHANGE);
+            writer.writeByte(nullBits(event.getProductId(), event.getProductName(), event.getProductCategory(),
+                    event.getSaleTotal(), event.getChangeTimestamp()));
+            writer.writeVarLong(nullSafe(event.getProductId()));
+            writer.writeString(event.getProductName());
+            writer.writeString(event.getProductCategory());
+            writer.writeVarLong(event.getQuantityChanged());
+            writer.writeVarLong(event.getNewQuantity());
+            writer.writeDecimal(event.getSaleTotal());
+            writer.writeTimestamp(event.getChangeTimestamp());
+        } else if (object instanceof PriceChangeEventDTO event) {
+            writer.writeByte(PRICE_CHANGE);
+            writer.writeByte(nullBits(event.getProductId(), event.getProductName(), event.getProductCategory(),
+                    event.getOldPrice(), event.getNewPrice(), event.getChangeAmount(), event.getChangeType(),
+                    event.getChangeTimestamp()));
+            writer.writeByte(event.getChangeReason() == null ? 1 : 0);
+            writer.writeVarLong(nullSafe(event.getProductId()));
+            writer.writeString(event.getProductName());
+            writer.writeString(event.getProductCategory());
+            writer.writeDecimal(event.getOldPrice());
+            writer.writeDecimal(event.getNewPrice());
+            writer.writeDecimal(event.getChangeAmount());
+            writer.writeLong(Double.doubleToRawLongBits(event.getChangePercentage()));
+            writer.writeString(event.getChangeType());
+            writer.writeTimestamp(event.getChangeTimestamp());
+            writer.writeString(event.getChangeReason());
+        } else {
+            throw new MessageConversionException("Unsupported type for compact binary encoding: "
+                    + (object == null ? "null" : object.getClass().getName()));
+        }
+        messageProperties.setContentType(CONTENT_TYPE);
+        byte[] body = writer.toByteArray();
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        try {
+            return read(new Reader(message.getBody()));
+        } catch (MessageConversionException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // Field values the DTO types reject, e.g. an out-of-range timestamp
+            throw new MessageConversionException("Malformed compact binary event: " + e.getMessage(), e);
+        }
+    }
+
+    private static Object read(Reader reader) {
+        byte type = reader.readByte();
+        int nulls = reader.readByte() & 0xFF;
+        switch (type) {
+            case STOCK_CHANGE -> {
+                StockChangeEventDTO event = new StockChangeEventDTO();
+                long productId = reader.readVarLong();
+                event.setProductId(isNull(nulls, 0) ? null : productId);
+                event.setProductName(reader.readString(isNull(nulls, 1)));
+                event.setProductCategory(reader.readString(isNull(nulls, 2)));
+                event.setQuantityChanged((int) reader.readVarLong());
+                event.setNewQuantity((int) reader.readVarLong());
+                event.setSaleTotal(reader.readDecimal(isNull(nulls, 3)));
+                event.setChangeTimestamp(reader.readTimestamp(isNull(nulls, 4)));
+                return event;
+            }
+            case PRICE_CHANGE -> {
+                boolean reasonNull = reader.readByte() == 1;
+                PriceChangeEventDTO event = new PriceChangeEventDTO();
+                long productId = reader.readVarLong();
+                event.setProductId(isNull(nulls, 0) ? null : productId);
+                event.setProductName(reader.readString(isNull(nulls, 1)));
+                event.setProductCategory(reader.readString(isNull(nulls, 2)));
+                event.setOldPrice(reader.readDecimal(isNull(nulls, 3)));
+                event.setNewPrice(reader.readDecimal(isNull(nulls, 4)));
+                event.setChangeAmount(reader.readDecimal(isNull(nulls, 5)));
+                event.setChangePercentage(Double.longBitsToDouble(reader.readLong()));
+                event.setChangeType(reader.readString(isNull(nulls, 6)));
+                event.setChangeTimestamp(reader.readTimestamp(isNull(nulls, 7)));
+                event.setChangeReason(reader.readString(reasonNull));
+                return event;
+            }
+            default -> throw new MessageConversionException("Unknown compact binary event type " + type);
+        }
+    }
+
+    private static int nullBits(Object... fields) {
+        int bits = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == null) {
+                bits |= 1 << i;
+            }
+        }
+        return bits;
+    }
+
+    private static boolean isNull(int nulls, int field) {
+        return (nulls & (1 << field)) != 0;
+    }
+
+    private static long nullSafe(Long value) {
+        return value == null ? 0L : value;
+    }
+
+    private static final class Writer {
+        private byte[] buffer = new byte[96];
+        private int position;
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarLong(long value) {
+            long zigZag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigZag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigZag & 0x7F) | 0x80);
+                zigZag >>>= 7;
+            }
+            buffer[position++] = (byte) zigZag;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeDecimal(BigDecimal value) {
+            if (value == null) {
+                return;
+            }
+            BigInteger unscaled = value.unscaledValue();
+            if (unscaled.bitLength() < 64) {
+                writeByte(BIG_DECIMAL_COMPACT);
+                writeVarLong(value.scale());
+                writeVarLong(unscaled.longValue());
+            } else {
+                writeByte(BIG_DECIMAL_WIDE);
+                writeVarLong(value.scale());
+                byte[] bytes = unscaled.toByteArray();
+                writeVarLong(bytes.length);
+                ensure(bytes.length);
+                System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                position += bytes.length;
+            }
+        }
+
+        void writeTimestamp(LocalDateTime value) {
+            if (value == null) {
+                return;
+            }
+            writeVarLong(value.toEpochSecond(ZoneOffset.UTC));
+            writeVarLong(value.getNano());
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensure(int bytes) {
+            if (position + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + bytes));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            require(1);
+            return buffer[position++];
+        }
+
+        long readLong() {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readVarLong() {
+            long zigZag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (shift > 63) {
+                    throw new MessageConversionException("Malformed varint at offset " + position);
+                }
+                b = readByte();
+                zigZag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+
+        String readString(boolean isNull) {
+            if (isNull) {
+                return null;
+            }
+            int length = readLength();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        BigDecimal readDecimal(boolean isNull) {
+            if (isNull) {
+                return null;
+            }
+            byte kind = readByte();
+            if (kind != BIG_DECIMAL_COMPACT && kind != BIG_DECIMAL_WIDE) {
+                throw new MessageConversionException("Unknown decimal encoding " + kind + " at offset " + (position - 1));
+            }
+            int scale = (int) readVarLong();
+            if (kind == BIG_DECIMAL_COMPACT) {
+                return BigDecimal.valueOf(readVarLong(), scale);
+            }
+            int length = readLength();
+            if (length == 0) {
+                throw new MessageConversionException("Empty wide decimal at offset " + position);
+            }
+            BigInteger unscaled = new BigInteger(buffer, position, length);
+            position += length;
+            return new BigDecimal(unscaled, scale);
+        }
+
+        LocalDateTime readTimestamp(boolean isNull) {
+            if (isNull) {
+                return null;
+            }
+            long epochSecond = readVarLong();
+            int nano = (int) readVarLong();
+            return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+        }
+
+        // A length prefix, checked against the bytes left
+        private int readLength() {
+            long length = readVarLong();
+            if (length < 0 || length > buffer.length - position) {
+                throw truncated(length);
+            }
+            return (int) length;
+        }
+
+        private void require(int bytes) {
+            if (bytes > buffer.length - position) {
+                throw truncated(bytes);
+            }
+        }
+
+        private MessageConversionException truncated(long bytes) {
+            return new MessageConversionException("Truncated compact binary event: " + bytes + " bytes needed at offset "
+                    + position + " of " + buffer.length);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+/**
+ * Message converter shared by every template and listener.
+ * <p>
+ * Inbound messages are decoded by content type: {@link CompactBinaryMessageConverter#CONTENT_TYPE}
+ * bodies go to the binary codec and everything else to Jackson, so JSON and binary producers can
+ * share a queue. Outbound stock and price events are written in the compact format only when
+ * {@code binaryEvents} is on; all other payloads are always JSON.
+ */
+public class EventMessageConverter implements MessageConverter {
+
+    private final Jackson2JsonMessageConverter jsonConverter;
+    private final CompactBinaryMessageConverter binaryConverter;
+    private final boolean binaryEvents;
+
+    public EventMessageConverter(Jackson2JsonMessageConverter jsonConverter,
+                                 CompactBinaryMessageConverter binaryConverter,
+                                 boolean binaryEvents) {
+        this.jsonConverter = jsonConverter;
+        this.binaryConverter = binaryConverter;
+        this.binaryEvents = binaryEvents;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        if (binaryEvents && binaryConverter.supports(object)) {
+            return binaryConverter.toMessage(object, messageProperties);
+        }
+        return jsonConverter.toMessage(object, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        String contentType = message.getMessageProperties().getContentType();
+        if (CompactBinaryMessageConverter.CONTENT_TYPE.equals(contentType)) {
+            return binaryConverter.fromMessage(message);
+        }
+        return jsonConverter.fromMessage(message);
+    }
+
+    public boolean isBinaryEvents() {
+        return binaryEvents;
+    }
+}
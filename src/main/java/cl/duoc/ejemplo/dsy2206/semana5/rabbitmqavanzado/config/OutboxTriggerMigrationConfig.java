@@ -0,0 +1,54 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import org.flywaydb.core.api.Location;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.flyway.FlywayConfigurationCustomizer;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import java.sql.DatabaseMetaData;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Adds {@code db/migration/outbox/{vendor}} to the Flyway locations while the outbox relay runs on the
+ * PRODUCT trigger, so the trigger (and its extra write per sale) only exists when something drains
+ * PRODUCT_CHANGE_LOG. The location holds callbacks, not versioned migrations, so switching the relay on
+ * later or off again never leaves the schema history inconsistent.
+ */
+@Configuration
+@ConditionalOnClass(FluentConfiguration.class)
+@ConditionalOnExpression("${outbox.relay.enabled:false} and !${outbox.write-path-capture.enabled:false}")
+public class OutboxTriggerMigrationConfig {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxTriggerMigrationConfig.class);
+
+    static final String OUTBOX_LOCATION = "classpath:db/migration/outbox/";
+
+    @Bean
+    public FlywayConfigurationCustomizer outboxTriggerLocation() {
+        return configuration -> {
+            // Spring Boot has already resolved {vendor} in spring.flyway.locations; resolve it the same way here
+            Location outbox = new Location(OUTBOX_LOCATION + vendor(configuration));
+            configuration.locations(Stream.concat(Arrays.stream(configuration.getLocations()), Stream.of(outbox))
+                    .toArray(Location[]::new));
+            logger.info("Outbox relay enabled: Flyway also runs {}", outbox);
+        };
+    }
+
+    private static String vendor(FluentConfiguration configuration) {
+        try {
+            String productName = JdbcUtils.extractDatabaseMetaData(configuration.getDataSource(),
+                    DatabaseMetaData::getDatabaseProductName);
+            return DatabaseDriver.fromProductName(productName).getId();
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Could not determine the database vendor for the outbox migrations", e);
+        }
+    }
+}
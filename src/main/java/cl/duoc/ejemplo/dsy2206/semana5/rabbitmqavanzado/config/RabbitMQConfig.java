@@ -2,16 +2,25 @@ package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
 
 import java.util.Map;
 
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.batch.SimpleBatchingStrategy;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory.ConfirmType;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 @Configuration
 public class RabbitMQConfig {
@@ -28,7 +37,42 @@ public class RabbitMQConfig {
 	@Value("${spring.rabbitmq.password:guest}")
 	private String rabbitPassword;
 
+	@Value("${messaging.binary-events.enabled:false}")
+	private boolean binaryEvents;
+
+	@Value("${stock.monitoring.publish.mode:batched}")
+	private String stockPublishMode;
+
+	@Value("${outbox.relay.enabled:false}")
+	private boolean outboxRelayEnabled;
+
+	@Value("${stock.monitoring.publish.batch-size:500}")
+	private int stockPublishBatchSize;
+
+	@Value("${stock.monitoring.publish.buffer-limit:1048576}")
+	private int stockPublishBufferLimit;
+
+	@Value("${stock.monitoring.publish.batch-timeout:250}")
+	private long stockPublishBatchTimeout;
+
+	@Value("${messaging.main-queue.prefetch:50}")
+	private int mainQueuePrefetch;
+
+	@Value("${messaging.main-queue.concurrency:1}")
+	private int mainQueueConcurrency;
+
+	@Value("${messaging.main-queue.max-concurrency:0}")
+	private int mainQueueMaxConcurrency;
+
+	@Value("${messaging.batch.size:100}")
+	private int batchSize;
+
+	@Value("${messaging.batch.receive-timeout:1000}")
+	private long batchReceiveTimeout;
+
 	public static final String MAIN_QUEUE = "myQueue";
+	public static final String MANUAL_ACK_CONTAINER_FACTORY = "manualAckContainerFactory";
+	public static final String BATCH_CONTAINER_FACTORY = "batchContainerFactory";
 	public static final String DLX_EXCHANGE = "dlx-exchange";
 	public static final String DLX_QUEUE = "dlx-queue";
 	public static final String DLX_ROUTING_KEY = "dlx-routing-key";
@@ -47,10 +91,21 @@ public class RabbitMQConfig {
 	public static final String STOCK_CHANGE_DLX = "stock-change-dlx";
 	public static final String STOCK_CHANGE_DLQ = "stock-change-dlq";
 
+	// Inventory update ingestion constants
+	public static final String INVENTORY_UPDATE_QUEUE = "inventory-updates";
+	public static final String INVENTORY_UPDATE_EXCHANGE = "inventory-update-exchange";
+	public static final String INVENTORY_UPDATE_ROUTING_KEY = "inventory.update";
+	public static final String INVENTORY_UPDATE_DLX = "inventory-update-dlx";
+	public static final String INVENTORY_UPDATE_DLQ = "inventory-update-dlq";
+
+	/**
+	 * JSON for everything, plus the compact binary format for stock and price events when
+	 * {@code messaging.binary-events.enabled} is set. Consumers pick the decoder from the content type.
+	 */
 	@Bean
-	Jackson2JsonMessageConverter messageConverter() {
+	EventMessageConverter messageConverter() {
 
-		return new Jackson2JsonMessageConverter();
+		return new EventMessageConverter(new Jackson2JsonMessageConverter(), new CompactBinaryMessageConverter(), binaryEvents);
 	}
 
 	@Bean
@@ -61,6 +116,49 @@ public class RabbitMQConfig {
 		factory.setPort(rabbitPort);
 		factory.setUsername(rabbitUsername);
 		factory.setPassword(rabbitPassword);
+		// The outbox relay deletes a change log row only once the broker confirmed its events
+		if ("confirmed".equals(stockPublishMode) || outboxRelayEnabled) {
+			factory.setPublisherConfirmType(ConfirmType.CORRELATED);
+			factory.setPublisherReturns(true);
+		}
+		return factory;
+	}
+
+	/**
+	 * Container factory of the manual-ack listeners: Boot's listener settings (auto-startup, virtual
+	 * threads) with the prefetch and consumer counts of {@code messaging.main-queue.*}. The listeners hand
+	 * deliveries to a {@code ManualAckConsumer}, so the prefetch is the per-consumer in-flight limit, and
+	 * there is no retry advice: failures are rejected to the dead letter exchange by the consumer itself.
+	 */
+	@Bean(MANUAL_ACK_CONTAINER_FACTORY)
+	SimpleRabbitListenerContainerFactory manualAckContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+			CachingConnectionFactory connectionFactory) {
+
+		SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+		configurer.configure(factory, connectionFactory);
+		factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+		factory.setAdviceChain();
+		factory.setPrefetchCount(mainQueuePrefetch);
+		factory.setConcurrentConsumers(mainQueueConcurrency);
+		factory.setMaxConcurrentConsumers(Math.max(mainQueueConcurrency, mainQueueMaxConcurrency));
+		return factory;
+	}
+
+	/**
+	 * Container factory of the batch listeners: each consumer collects up to {@code messaging.batch.size}
+	 * messages, or whatever arrived within {@code messaging.batch.receive-timeout}, and delivers them as one
+	 * list acknowledged together. Producer-side batches are split before they are counted.
+	 */
+	@Bean(BATCH_CONTAINER_FACTORY)
+	SimpleRabbitListenerContainerFactory batchContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+			CachingConnectionFactory connectionFactory) {
+
+		SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+		configurer.configure(factory, connectionFactory);
+		factory.setBatchListener(true);
+		factory.setConsumerBatchEnabled(true);
+		factory.setBatchSize(batchSize);
+		factory.setReceiveTimeout(batchReceiveTimeout);
 		return factory;
 	}
 
@@ -166,10 +264,84 @@ public class RabbitMQConfig {
 		return BindingBuilder.bind(stockChangeDlq()).to(stockChangeDlxExchange()).with("dlq");
 	}
 
+	// Inventory update queue configuration
+	@Bean
+	Queue inventoryUpdateQueue() {
+
+		return new Queue(INVENTORY_UPDATE_QUEUE, true, false, false,
+				Map.of("x-dead-letter-exchange", INVENTORY_UPDATE_DLX, "x-dead-letter-routing-key", "dlq"));
+	}
+
 	@Bean
-	public RabbitTemplate rabbitTemplate(CachingConnectionFactory connectionFactory, Jackson2JsonMessageConverter messageConverter) {
+	DirectExchange inventoryUpdateExchange() {
+
+		return new DirectExchange(INVENTORY_UPDATE_EXCHANGE);
+	}
+
+	@Bean
+	Binding inventoryUpdateBinding() {
+
+		return BindingBuilder.bind(inventoryUpdateQueue()).to(inventoryUpdateExchange()).with(INVENTORY_UPDATE_ROUTING_KEY);
+	}
+
+	@Bean
+	DirectExchange inventoryUpdateDlxExchange() {
+
+		return new DirectExchange(INVENTORY_UPDATE_DLX);
+	}
+
+	@Bean
+	Queue inventoryUpdateDlq() {
+
+		return new Queue(INVENTORY_UPDATE_DLQ);
+	}
+
+	@Bean
+	Binding inventoryUpdateDlxBinding() {
+
+		return BindingBuilder.bind(inventoryUpdateDlq()).to(inventoryUpdateDlxExchange()).with("dlq");
+	}
+
+	@Bean
+	@Primary
+	public RabbitTemplate rabbitTemplate(CachingConnectionFactory connectionFactory, EventMessageConverter messageConverter) {
 	    RabbitTemplate template = new RabbitTemplate(connectionFactory);
 	    template.setMessageConverter(messageConverter);
 	    return template;
 	}
+
+	/**
+	 * Packs stock change events into one AMQP message per batch (size, byte or time trigger).
+	 * Spring AMQP listener containers split the batch back into individual messages by default.
+	 */
+	@Bean
+	public BatchingRabbitTemplate stockChangeBatchingTemplate(CachingConnectionFactory connectionFactory,
+			EventMessageConverter messageConverter) {
+
+		// Not a bean on purpose: a TaskScheduler bean would replace the one used by @Scheduled
+		ThreadPoolTaskScheduler flushScheduler = new ThreadPoolTaskScheduler();
+		flushScheduler.setThreadNamePrefix("stock-batch-flush-");
+		flushScheduler.setDaemon(true);
+		flushScheduler.initialize();
+		BatchingRabbitTemplate template = new BatchingRabbitTemplate(connectionFactory,
+				new SimpleBatchingStrategy(stockPublishBatchSize, stockPublishBufferLimit, stockPublishBatchTimeout),
+				flushScheduler);
+		template.setMessageConverter(messageConverter);
+		return template;
+	}
+
+	/**
+	 * Mandatory publishing with correlated confirms; used by the confirmed stock publish mode and the
+	 * outbox relay.
+	 */
+	@Bean
+	@ConditionalOnExpression("'${stock.monitoring.publish.mode:batched}' == 'confirmed' or ${outbox.relay.enabled:false}")
+	public RabbitTemplate confirmingRabbitTemplate(CachingConnectionFactory connectionFactory,
+			EventMessageConverter messageConverter) {
+
+		RabbitTemplate template = new RabbitTemplate(connectionFactory);
+		template.setMessageConverter(messageConverter);
+		template.setMandatory(true);
+		return template;
+	}
 }
@@ -0,0 +1,106 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streams the JFR {@code jdk.VirtualThreadPinned} event while virtual threads are enabled. A virtual
+ * thread that blocks inside a {@code synchronized} block or a native frame keeps its carrier thread,
+ * so the Oracle driver (which synchronizes on the connection) can quietly turn virtual threads back
+ * into a small platform pool.
+ * <p>
+ * Pins longer than {@code virtual-threads.pinning.threshold} are timed in
+ * {@code jvm.threads.virtual.pinned}, tagged {@code source=oracle-jdbc} when an {@code oracle.jdbc}
+ * frame is on the stack, and the first occurrence of each pinning site is logged with its stack.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@ConditionalOnProperty(value = "virtual-threads.pinning.monitor-enabled", havingValue = "true", matchIfMissing = true)
+public class VirtualThreadPinningMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_LOGGED_SITES = 100;
+    private static final int LOGGED_FRAMES = 12;
+
+    private final Timer oracleJdbcPins;
+    private final Timer otherPins;
+    private final Set<String> loggedSites = ConcurrentHashMap.newKeySet();
+    private final Duration threshold;
+    private RecordingStream recording;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                       @Value("${virtual-threads.pinning.threshold:20}") long thresholdMs) {
+        this.threshold = Duration.ofMillis(thresholdMs);
+        this.oracleJdbcPins = pinTimer(meterRegistry, "oracle-jdbc");
+        this.otherPins = pinTimer(meterRegistry, "other");
+    }
+
+    @PostConstruct
+    void start() {
+        recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.startAsync();
+        logger.info("Virtual thread pinning monitor started (threshold {} ms)", threshold.toMillis());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        List<RecordedFrame> frames = frames(event.getStackTrace());
+        boolean oracleJdbc = frames.stream().anyMatch(frame -> frame.getMethod().getType().getName().startsWith("oracle.jdbc"));
+        (oracleJdbc ? oracleJdbcPins : otherPins).record(event.getDuration());
+        String site = pinningSite(frames);
+        if (loggedSites.size() < MAX_LOGGED_SITES && loggedSites.add(site)) {
+            StringBuilder stack = new StringBuilder();
+            frames.stream().limit(LOGGED_FRAMES).forEach(frame -> stack.append("\n\tat ")
+                    .append(frame.getMethod().getType().getName()).append('.').append(frame.getMethod().getName())
+                    .append(':').append(frame.getLineNumber()));
+            logger.warn("Virtual thread pinned for {} ms at {}{}", event.getDuration().toMillis(), site, stack);
+        }
+    }
+
+    // First application frame, or the top frame when the pin happens entirely in library code
+    private static String pinningSite(List<RecordedFrame> frames) {
+        RecordedFrame site = frames.stream()
+                .filter(frame -> frame.getMethod().getType().getName().startsWith("cl.duoc"))
+                .findFirst()
+                .orElse(frames.isEmpty() ? null : frames.get(0));
+        return site == null ? "unknown" : site.getMethod().getType().getName() + "." + site.getMethod().getName();
+    }
+
+    private static List<RecordedFrame> frames(RecordedStackTrace stackTrace) {
+        return stackTrace == null ? List.of() : stackTrace.getFrames();
+    }
+
+    private static Timer pinTimer(MeterRegistry meterRegistry, String source) {
+        return Timer.builder("jvm.threads.virtual.pinned")
+                .description("Virtual threads pinned to their carrier longer than the threshold")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,57 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.controller;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PricePointDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.PriceHistoryStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Price charts from the local {@link PriceHistoryStore}; points are returned oldest first.
+ */
+@RestController
+@RequestMapping("/api/monitoring/prices/history")
+@ConditionalOnProperty(value = "price.history.enabled", havingValue = "true", matchIfMissing = true)
+public class PriceHistoryController {
+
+    private final PriceHistoryStore priceHistoryStore;
+
+    @Value("${price.history.max-points:10000}")
+    private int maxPoints;
+
+    public PriceHistoryController(PriceHistoryStore priceHistoryStore) {
+        this.priceHistoryStore = priceHistoryStore;
+    }
+
+    /**
+     * Prices between {@code from} and {@code to}; the last 30 days by default.
+     */
+    @GetMapping("/{productId}")
+    public ResponseEntity<List<PricePointDTO>> getPriceHistory(
+            @PathVariable Long productId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Integer limit) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(30);
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(priceHistoryStore.range(productId, start, end, cap(limit)));
+    }
+
+    @GetMapping("/{productId}/latest")
+    public ResponseEntity<List<PricePointDTO>> getLatestPrices(@PathVariable Long productId,
+                                                               @RequestParam(defaultValue = "100") int n) {
+        return ResponseEntity.ok(priceHistoryStore.latest(productId, cap(n)));
+    }
+
+    private int cap(Integer limit) {
+        return limit == null || limit <= 0 ? maxPoints : Math.min(limit, maxPoints);
+    }
+}
@@ -0,0 +1,35 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.controller;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.PriceChangeMonitoringService;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.PriceChangeNotificationService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/monitoring/prices")
+@ConditionalOnProperty(value = "price.monitoring.enabled", havingValue = "true", matchIfMissing = true)
+public class PriceMonitoringController {
+
+    private final PriceChangeMonitoringService priceChangeMonitoringService;
+    private final PriceChangeNotificationService priceChangeNotificationService;
+
+    public PriceMonitoringController(PriceChangeMonitoringService priceChangeMonitoringService,
+                                     PriceChangeNotificationService priceChangeNotificationService) {
+        this.priceChangeMonitoringService = priceChangeMonitoringService;
+        this.priceChangeNotificationService = priceChangeNotificationService;
+    }
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(priceChangeMonitoringService.getStatus());
+    }
+
+    @PostMapping("/notifications")
+    public ResponseEntity<Map<String, Object>> setNotificationsEnabled(@RequestParam boolean enabled) {
+        priceChangeNotificationService.setNotificationsEnabled(enabled);
+        return ResponseEntity.ok(priceChangeMonitoringService.getStatus());
+    }
+}
@@ -1,44 +1,119 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.controller;
 
-import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductPageDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ProductCache;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeNotificationService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/monitoring")
 public class ProductController {
 
+    private final ProductCache productCache;
     private final ProductRepository productRepository;
     private final StockChangeNotificationService stockChangeNotificationService;
+    private final TransactionTemplate streamTransaction;
+    private final ObjectWriter ndjsonWriter;
 
-    public ProductController(ProductRepository productRepository,
-                           StockChangeNotificationService stockChangeNotificationService) {
+    @Value("${product.api.max-page-size:1000}")
+    private int maxPageSize;
+
+    @Value("${product.api.stream-fetch-size:500}")
+    private int streamFetchSize;
+
+    public ProductController(ProductCache productCache,
+                           ProductRepository productRepository,
+                           StockChangeNotificationService stockChangeNotificationService,
+                           PlatformTransactionManager transactionManager,
+                           ObjectMapper objectMapper) {
+        this.productCache = productCache;
         this.productRepository = productRepository;
         this.stockChangeNotificationService = stockChangeNotificationService;
+        this.streamTransaction = new TransactionTemplate(transactionManager);
+        this.streamTransaction.setReadOnly(true);
+        // Flushed in fetch-size chunks instead of after every row
+        this.ndjsonWriter = objectMapper.writerFor(ProductSummaryDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
     }
 
     // Stock monitoring endpoints only
     @GetMapping("/products/active")
-    public ResponseEntity<List<Product>> getActiveProductsForMonitoring() {
-        List<Product> products = productRepository.findActiveProducts();
+    public ResponseEntity<List<ProductSummaryDTO>> getActiveProductsForMonitoring() {
+        List<ProductSummaryDTO> products = productCache.getActiveProducts();
         return ResponseEntity.ok(products);
     }
 
+    /**
+     * Keyset pagination over active products in ID order: pass the previous page's {@code nextCursor}
+     * as {@code after}. Pages cost the same at any depth, unlike OFFSET.
+     */
+    @GetMapping(value = "/products/active", params = "limit")
+    public ResponseEntity<ProductPageDTO> getActiveProductsPage(@RequestParam int limit,
+                                                                @RequestParam(defaultValue = "0") long after) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        List<ProductSummaryDTO> items = productRepository.findActiveProductSummariesAfter(after, pageSize);
+        Long nextCursor = items.size() == pageSize ? items.get(items.size() - 1).getId() : null;
+        return ResponseEntity.ok(new ProductPageDTO(items, nextCursor));
+    }
+
+    /**
+     * Every active product as newline-delimited JSON, written as rows come off the database cursor,
+     * so memory per request does not depend on the catalog size.
+     */
+    @GetMapping(value = "/products/active/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamActiveProducts() {
+        StreamingResponseBody body = outputStream -> streamTransaction.executeWithoutResult(status -> {
+            try (Stream<ProductSummaryDTO> rows = productRepository.streamActiveProductSummaries(streamFetchSize);
+                 JsonGenerator generator = ndjsonWriter.createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                Iterator<ProductSummaryDTO> iterator = rows.iterator();
+                int written = 0;
+                while (iterator.hasNext()) {
+                    ndjsonWriter.writeValue(generator, iterator.next());
+                    if (++written % streamFetchSize == 0) {
+                        generator.flush();
+                    }
+                }
+                if (written > 0) {
+                    generator.writeRaw('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @GetMapping("/products/{id}")
-    public ResponseEntity<Product> getProductForMonitoring(@PathVariable Long id) {
-        Optional<Product> product = productRepository.findById(id);
+    public ResponseEntity<ProductSummaryDTO> getProductForMonitoring(@PathVariable Long id) {
+        Optional<ProductSummaryDTO> product = productCache.getProduct(id);
         return product.map(ResponseEntity::ok)
                      .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/products/category/{category}")
-    public ResponseEntity<List<Product>> getProductsByCategoryForMonitoring(@PathVariable String category) {
-        List<Product> products = productRepository.findActiveProductsByCategory(category);
+    public ResponseEntity<List<ProductSummaryDTO>> getProductsByCategoryForMonitoring(@PathVariable String category) {
+        List<ProductSummaryDTO> products = productCache.getActiveProductsByCategory(category);
         return ResponseEntity.ok(products);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.controller;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesWindowDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Live sales from the in-memory windows of {@link SalesWindowAggregator}; no request touches the
+ * database. {@code window} is one of the configured lengths ({@code 5m}, {@code 1h}, ...) and
+ * {@code tumbling=true} reads the last closed tumbling window instead of the sliding one.
+ */
+@RestController
+@RequestMapping("/api/monitoring/sales")
+@ConditionalOnProperty(value = "sales.aggregation.enabled", havingValue = "true", matchIfMissing = true)
+public class SalesMonitoringController {
+
+    private final SalesWindowAggregator salesWindowAggregator;
+
+    public SalesMonitoringController(SalesWindowAggregator salesWindowAggregator) {
+        this.salesWindowAggregator = salesWindowAggregator;
+    }
+
+    @GetMapping("/windows")
+    public ResponseEntity<List<SalesWindowDTO>> getWindowTotals() {
+        return ResponseEntity.ok(salesWindowAggregator.getWindowTotals());
+    }
+
+    @GetMapping("/categories")
+    public ResponseEntity<List<SalesWindowDTO>> getCategoryBreakdown(@RequestParam(defaultValue = "5m") String window,
+                                                                     @RequestParam(defaultValue = "false") boolean tumbling) {
+        return lookup(window, duration -> salesWindowAggregator.getCategoryBreakdown(duration, tumbling));
+    }
+
+    @GetMapping("/categories/{category}")
+    public ResponseEntity<SalesWindowDTO> getCategoryTotals(@PathVariable String category,
+                                                            @RequestParam(defaultValue = "5m") String window,
+                                                            @RequestParam(defaultValue = "false") boolean tumbling) {
+        return lookup(window, duration -> salesWindowAggregator.getCategoryTotals(duration, tumbling, category));
+    }
+
+    @GetMapping("/products/{productId}")
+    public ResponseEntity<SalesWindowDTO> getProductTotals(@PathVariable Long productId,
+                                                           @RequestParam(defaultValue = "5m") String window,
+                                                           @RequestParam(defaultValue = "false") boolean tumbling) {
+        return lookup(window, duration -> salesWindowAggregator.getProductTotals(duration, tumbling, productId));
+    }
+
+    // 400 for an unparsable window, 404 for one that is not configured
+    private static <T> ResponseEntity<T> lookup(String window, Function<Duration, Optional<T>> reader) {
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(window);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return reader.apply(duration).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,30 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Stock movement pushed by the inventory service. {@code quantityDelta} is negative for sales and positive
+ * for restocks; {@code newQuantity}, when present, is the authoritative quantity after the movement.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+public class InventoryUpdateDTO {
+    private Long productId;
+    private String productName;
+    private String productCategory;
+    private Integer quantityDelta;
+    private Integer newQuantity;
+    private BigDecimal unitPrice;
+    private String movementType;
+    private LocalDateTime occurredAt;
+}
@@ -0,0 +1,21 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One entry of a product's price history: the price in effect from {@code timestamp} on.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class PricePointDTO {
+    private LocalDateTime timestamp;
+    private BigDecimal price;
+}
@@ -0,0 +1,21 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * One keyset page of products. {@code nextCursor} is the {@code after} value of the next page,
+ * or {@code null} when this is the last one.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class ProductPageDTO {
+    private List<ProductSummaryDTO> items;
+    private Long nextCursor;
+}
@@ -0,0 +1,29 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Lean product row for the monitoring REST endpoints: the columns dashboards read, without
+ * DESCRIPTION and VERSION. Built directly by JPQL constructor projections, so rows never enter
+ * the persistence context.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class ProductSummaryDTO {
+    private Long id;
+    private String name;
+    private String category;
+    private int quantity;
+    private BigDecimal price;
+    private BigDecimal previousPrice;
+    private LocalDateTime lastPriceUpdate;
+    private boolean active;
+}
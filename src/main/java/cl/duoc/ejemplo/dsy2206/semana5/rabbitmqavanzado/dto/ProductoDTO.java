@@ -1,5 +1,6 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
 
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.FixedPoint;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -47,10 +48,8 @@ public class ProductoDTO {
         if (previousPrice == null || price == null || previousPrice.compareTo(BigDecimal.ZERO) == 0) {
             return 0.0;
         }
-        return getPriceChangeAmount()
-                .divide(previousPrice, 4, java.math.RoundingMode.HALF_UP)
-                .multiply(BigDecimal.valueOf(100))
-                .doubleValue();
+        // Scale-4 HALF_UP ratio, computed in cents when both prices have at most two decimals
+        return FixedPoint.changePercentage(previousPrice, price);
     }
 
     // Constructor for creating from Product entity
@@ -69,4 +68,15 @@ public class ProductoDTO {
         this.previousPrice = previousPrice;
         this.lastPriceUpdate = lastPriceUpdate;
     }
+
+    // Constructor for stock monitoring scans (JPQL projection, skips DESCRIPTION and VERSION)
+    public ProductoDTO(Long id, String name, String category, int quantity, BigDecimal price, LocalDateTime lastPriceUpdate) {
+        this.id = id;
+        this.name = name;
+        this.category = category;
+        this.quantity = quantity;
+        this.price = price;
+        this.lastPriceUpdate = lastPriceUpdate;
+        this.active = true;
+    }
 }
\ No newline at end of file
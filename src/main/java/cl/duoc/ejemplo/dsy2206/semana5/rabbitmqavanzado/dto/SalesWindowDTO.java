@@ -0,0 +1,32 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Sales of one aggregation window, either in total or for a single category or product (the other
+ * key is null). {@code windowStart} and {@code windowEnd} are the bucket-aligned bounds actually
+ * covered.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+public class SalesWindowDTO {
+    private String window;
+    private String type;
+    private Instant windowStart;
+    private Instant windowEnd;
+    private String category;
+    private Long productId;
+    private long events;
+    private long unitsSold;
+    private BigDecimal revenue;
+}
@@ -1,5 +1,6 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity;
 
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.FixedPoint;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -92,9 +93,7 @@ public class Product {
         if (previousPrice == null || price == null || previousPrice.compareTo(BigDecimal.ZERO) == 0) {
             return 0.0;
         }
-        return getPriceChangeAmount()
-                .divide(previousPrice, 4, java.math.RoundingMode.HALF_UP)
-                .multiply(BigDecimal.valueOf(100))
-                .doubleValue();
+        // Scale-4 HALF_UP ratio, computed in cents when both prices have at most two decimals
+        return FixedPoint.changePercentage(previousPrice, price);
     }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Outbox row written for every quantity or price change of a product (by the PRODUCT trigger or the
+ * application write path) and deleted by the relay once it has been published.
+ */
+@Entity
+@Table(name = "PRODUCT_CHANGE_LOG")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductChangeLog {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "CHANGE_ID")
+    private Long id;
+
+    @Column(name = "PRODUCT_ID", nullable = false)
+    private Long productId;
+
+    @Column(name = "PRODUCT_NAME")
+    private String productName;
+
+    @Column(name = "PRODUCT_CATEGORY")
+    private String productCategory;
+
+    @Column(name = "OLD_QUANTITY")
+    private Integer oldQuantity;
+
+    @Column(name = "NEW_QUANTITY")
+    private Integer newQuantity;
+
+    @Column(name = "OLD_PRICE", precision = 10, scale = 2)
+    private BigDecimal oldPrice;
+
+    @Column(name = "NEW_PRICE", precision = 10, scale = 2)
+    private BigDecimal newPrice;
+
+    @Column(name = "CHANGED_AT", nullable = false)
+    private LocalDateTime changedAt;
+
+    @Column(name = "CLAIMED_BY", length = 128)
+    private String claimedBy;
+
+    @Column(name = "CLAIMED_AT")
+    private LocalDateTime claimedAt;
+}
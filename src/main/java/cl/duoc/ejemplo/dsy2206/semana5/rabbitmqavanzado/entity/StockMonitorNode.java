@@ -0,0 +1,26 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Heartbeat of a running stock monitor instance, used to size each instance's share of the shards.
+ */
+@Entity
+@Table(name = "STOCK_MONITOR_NODE")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockMonitorNode {
+
+    @Id
+    @Column(name = "NODE_ID", length = 128)
+    private String nodeId;
+
+    @Column(name = "HEARTBEAT_AT")
+    private LocalDateTime heartbeatAt;
+}
@@ -0,0 +1,28 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Quantity of one product as last seen by the node that released its shard. The next owner diffs
+ * against it instead of taking a fresh baseline, so sales made during the handoff are still emitted.
+ */
+@Entity
+@Table(name = "STOCK_SHARD_HANDOFF")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockShardHandoff {
+
+    @Id
+    @Column(name = "PRODUCT_ID")
+    private Long productId;
+
+    @Column(name = "SHARD_ID", nullable = false)
+    private Integer shardId;
+
+    @Column(name = "QUANTITY", nullable = false)
+    private Integer quantity;
+}
@@ -0,0 +1,30 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ownership lease of one product shard (products with {@code MOD(ID, shardCount) = SHARD_ID}).
+ * A shard without owner, or whose lease expired, can be claimed by any monitor instance.
+ */
+@Entity
+@Table(name = "STOCK_SHARD_LEASE")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockShardLease {
+
+    @Id
+    @Column(name = "SHARD_ID")
+    private Integer shardId;
+
+    @Column(name = "OWNER_ID", length = 128)
+    private String ownerId;
+
+    @Column(name = "EXPIRES_AT")
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,91 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Write-path capture for the outbox: every Hibernate UPDATE of a {@link Product} that changes its quantity
+ * or price inserts a PRODUCT_CHANGE_LOG row on the same connection, so the log entry commits or rolls
+ * back with the product change. Only for deployments that write products through this application; while
+ * it is enabled the outbox PRODUCT trigger is not installed (see {@code OutboxTriggerMigrationConfig}).
+ */
+@Component
+@ConditionalOnProperty(value = "outbox.write-path-capture.enabled", havingValue = "true")
+public class ProductChangeCaptureListener implements PostUpdateEventListener {
+
+    private static final String INSERT_CHANGE = "INSERT INTO PRODUCT_CHANGE_LOG "
+            + "(PRODUCT_ID, PRODUCT_NAME, PRODUCT_CATEGORY, OLD_QUANTITY, NEW_QUANTITY, OLD_PRICE, NEW_PRICE, CHANGED_AT) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public ProductChangeCaptureListener(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    void register() {
+        entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .requireService(EventListenerRegistry.class)
+                .appendListeners(EventType.POST_UPDATE, this);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Product product) || event.getOldState() == null) {
+            return;
+        }
+        List<String> properties = Arrays.asList(event.getPersister().getPropertyNames());
+        Object[] oldState = event.getOldState();
+        Integer oldQuantity = (Integer) oldState[properties.indexOf("quantity")];
+        BigDecimal oldPrice = (BigDecimal) oldState[properties.indexOf("price")];
+        boolean quantityChanged = oldQuantity == null || oldQuantity != product.getQuantity();
+        boolean priceChanged = !Objects.equals(oldPrice == null ? null : oldPrice.stripTrailingZeros(),
+                product.getPrice() == null ? null : product.getPrice().stripTrailingZeros());
+        if (!quantityChanged && !priceChanged) {
+            return;
+        }
+        event.getSession().doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_CHANGE)) {
+                insert.setLong(1, product.getId());
+                insert.setString(2, product.getName());
+                insert.setString(3, product.getCategory());
+                if (oldQuantity != null) {
+                    insert.setInt(4, oldQuantity);
+                } else {
+                    insert.setNull(4, Types.INTEGER);
+                }
+                insert.setInt(5, product.getQuantity());
+                insert.setBigDecimal(6, oldPrice);
+                insert.setBigDecimal(7, product.getPrice());
+                insert.setTimestamp(8, Timestamp.valueOf(product.getLastPriceUpdate() != null
+                        ? product.getLastPriceUpdate() : LocalDateTime.now()));
+                insert.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+}
@@ -0,0 +1,66 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.ProductChangeLog;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProductChangeLogRepository extends JpaRepository<ProductChangeLog, Long> {
+
+    /**
+     * Claims the oldest {@code limit} unclaimed (or abandoned) changes for {@code relay}. Rows claimed by
+     * another relay in the meantime fail the outer condition once its UPDATE commits, so concurrent relays
+     * skip each other's rows instead of publishing them twice.
+     *
+     * @return number of rows claimed
+     */
+    @Modifying
+    @Query("UPDATE ProductChangeLog c SET c.claimedBy = :relay, c.claimedAt = :now "
+            + "WHERE (c.claimedBy IS NULL OR c.claimedAt < :abandonedBefore) AND c.id IN ("
+            + "SELECT c2.id FROM ProductChangeLog c2 WHERE c2.claimedBy IS NULL OR c2.claimedAt < :abandonedBefore "
+            + "ORDER BY c2.id LIMIT :limit)")
+    int claimBatch(@Param("relay") String relay,
+                   @Param("now") LocalDateTime now,
+                   @Param("abandonedBefore") LocalDateTime abandonedBefore,
+                   @Param("limit") int limit);
+
+    /**
+     * Same as {@link #claimBatch} restricted to the products of a shard slice.
+     */
+    @Modifying
+    @Query("UPDATE ProductChangeLog c SET c.claimedBy = :relay, c.claimedAt = :now "
+            + "WHERE (c.claimedBy IS NULL OR c.claimedAt < :abandonedBefore) AND c.id IN ("
+            + "SELECT c2.id FROM ProductChangeLog c2 WHERE (c2.claimedBy IS NULL OR c2.claimedAt < :abandonedBefore) "
+            + "AND MOD(c2.productId, :shardCount) IN (:shards) ORDER BY c2.id LIMIT :limit)")
+    int claimBatchInSlice(@Param("relay") String relay,
+                          @Param("now") LocalDateTime now,
+                          @Param("abandonedBefore") LocalDateTime abandonedBefore,
+                          @Param("limit") int limit,
+                          @Param("shardCount") int shardCount,
+                          @Param("shards") Collection<Integer> shards);
+
+    /**
+     * Re-stamps the claim of every row {@code relay} still holds, so rows it keeps retrying are not taken
+     * over as abandoned.
+     *
+     * @return number of rows held
+     */
+    @Modifying
+    @Query("UPDATE ProductChangeLog c SET c.claimedAt = :now WHERE c.claimedBy = :relay")
+    int renewClaims(@Param("relay") String relay, @Param("now") LocalDateTime now);
+
+    @Query("SELECT c FROM ProductChangeLog c WHERE c.claimedBy = :relay ORDER BY c.id")
+    List<ProductChangeLog> findClaimedBy(@Param("relay") String relay, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM ProductChangeLog c WHERE c.id IN (:ids)")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -1,6 +1,9 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
 
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -11,7 +14,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
 
     /**
      * Find products that have been updated after a specific timestamp
@@ -47,6 +50,42 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     @Query("SELECT p FROM Product p WHERE p.active = true")
     List<Product> findActiveProducts();
 
+    /**
+     * Summary projection of a product by ID, active or not
+     */
+    @Query("SELECT new cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO("
+            + "p.id, p.name, p.category, p.quantity, p.price, p.previousPrice, p.lastPriceUpdate, p.active) "
+            + "FROM Product p WHERE p.id = :id")
+    Optional<ProductSummaryDTO> findProductSummaryById(@Param("id") Long id);
+
+    /**
+     * Summary projection of the active products, in ID order
+     */
+    @Query("SELECT new cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO("
+            + "p.id, p.name, p.category, p.quantity, p.price, p.previousPrice, p.lastPriceUpdate, p.active) "
+            + "FROM Product p WHERE p.active = true ORDER BY p.id")
+    List<ProductSummaryDTO> findActiveProductSummaries();
+
+    /**
+     * Summary projection of the active products of a category, in ID order
+     */
+    @Query("SELECT new cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO("
+            + "p.id, p.name, p.category, p.quantity, p.price, p.previousPrice, p.lastPriceUpdate, p.active) "
+            + "FROM Product p WHERE p.category = :category AND p.active = true ORDER BY p.id")
+    List<ProductSummaryDTO> findActiveProductSummariesByCategory(@Param("category") String category);
+
+    /**
+     * Keyset page of active product prices changed after the (lastPriceUpdate, id) position.
+     * Used by the incremental price scan; selects only the price monitoring columns.
+     */
+    @Query("SELECT new cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO("
+            + "p.id, p.name, p.category, p.price, p.previousPrice, p.lastPriceUpdate) "
+            + "FROM Product p WHERE p.active = true AND (p.lastPriceUpdate > :timestamp "
+            + "OR (p.lastPriceUpdate = :timestamp AND p.id > :lastId)) ORDER BY p.lastPriceUpdate, p.id")
+    List<ProductoDTO> findActiveProductPricesChangedAfter(@Param("timestamp") LocalDateTime timestamp,
+                                                          @Param("lastId") Long lastId,
+                                                          Pageable pageable);
+
     /**
      * Find product by name (case insensitive)
      */
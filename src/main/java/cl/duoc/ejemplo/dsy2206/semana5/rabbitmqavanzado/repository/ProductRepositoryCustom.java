@@ -0,0 +1,58 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Query methods that need direct control over the JDBC cursor and are therefore
+ * implemented against the EntityManager instead of derived from annotations.
+ */
+public interface ProductRepositoryCustom {
+
+    /**
+     * Streams the stock projection of every active product off a forward-only cursor.
+     * Rows are unmanaged DTOs, so the persistence context does not grow with the catalog.
+     * Must be consumed (and closed) inside a transaction.
+     */
+    Stream<ProductoDTO> streamActiveProductStock(int fetchSize);
+
+    /**
+     * Same as {@link #streamActiveProductStock(int)} restricted to the products of {@code slice}
+     * ({@code null} reads the whole catalog).
+     */
+    Stream<ProductoDTO> streamActiveProductStock(ProductShardSlice slice, int fetchSize);
+
+    /**
+     * Same as {@link #streamActiveProductStock(int)} restricted to {@code fromId <= id < toId}
+     * and, when {@code slice} is not {@code null}, to the products of that slice,
+     * so a full scan can be split into ID range partitions read on separate connections.
+     */
+    Stream<ProductoDTO> streamActiveProductStock(long fromId, long toId, ProductShardSlice slice, int fetchSize);
+
+    /**
+     * Keyset page of active products changed after the (lastPriceUpdate, id) position, optionally
+     * restricted to {@code slice}. Used by the delta stock scan so a poll only reads rows touched
+     * since the last watermark.
+     */
+    List<ProductoDTO> findActiveProductsChangedAfter(LocalDateTime timestamp, long lastId, ProductShardSlice slice, int limit);
+
+    /**
+     * Lowest and highest ID of the active products, or {@code null} when there are none.
+     */
+    long[] findActiveProductIdRange();
+
+    /**
+     * Keyset page of the summary projection of active products with {@code id > afterId}, in ID order.
+     */
+    List<ProductSummaryDTO> findActiveProductSummariesAfter(long afterId, int limit);
+
+    /**
+     * Streams the summary projection of every active product in ID order off a forward-only cursor.
+     * Must be consumed (and closed) inside a transaction.
+     */
+    Stream<ProductSummaryDTO> streamActiveProductSummaries(int fetchSize);
+}
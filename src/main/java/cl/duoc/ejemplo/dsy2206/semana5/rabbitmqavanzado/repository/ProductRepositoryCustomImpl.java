@@ -0,0 +1,96 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    private static final String STOCK_PROJECTION = "SELECT new cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO("
+            + "p.id, p.name, p.category, p.quantity, p.price, p.lastPriceUpdate) FROM Product p WHERE p.active = true";
+    private static final String SUMMARY_PROJECTION = "SELECT new cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO("
+            + "p.id, p.name, p.category, p.quantity, p.price, p.previousPrice, p.lastPriceUpdate, p.active) FROM Product p WHERE p.active = true";
+    private static final String SHARD_FILTER = " AND MOD(p.id, :shardCount) IN (:shards)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Stream<ProductoDTO> streamActiveProductStock(int fetchSize) {
+        return streamActiveProductStock(null, fetchSize);
+    }
+
+    @Override
+    public Stream<ProductoDTO> streamActiveProductStock(ProductShardSlice slice, int fetchSize) {
+        TypedQuery<ProductoDTO> query = entityManager.createQuery(
+                STOCK_PROJECTION + (slice != null ? SHARD_FILTER : ""), ProductoDTO.class);
+        return stream(bindSlice(query, slice), fetchSize);
+    }
+
+    @Override
+    public Stream<ProductoDTO> streamActiveProductStock(long fromId, long toId, ProductShardSlice slice, int fetchSize) {
+        TypedQuery<ProductoDTO> query = entityManager.createQuery(
+                        STOCK_PROJECTION + " AND p.id >= :fromId AND p.id < :toId" + (slice != null ? SHARD_FILTER : ""),
+                        ProductoDTO.class)
+                .setParameter("fromId", fromId)
+                .setParameter("toId", toId);
+        return stream(bindSlice(query, slice), fetchSize);
+    }
+
+    @Override
+    public List<ProductoDTO> findActiveProductsChangedAfter(LocalDateTime timestamp, long lastId, ProductShardSlice slice, int limit) {
+        TypedQuery<ProductoDTO> query = entityManager.createQuery(
+                        STOCK_PROJECTION + (slice != null ? SHARD_FILTER : "")
+                                + " AND (p.lastPriceUpdate > :timestamp OR (p.lastPriceUpdate = :timestamp AND p.id > :lastId))"
+                                + " ORDER BY p.lastPriceUpdate, p.id", ProductoDTO.class)
+                .setParameter("timestamp", timestamp)
+                .setParameter("lastId", lastId)
+                .setMaxResults(limit);
+        return bindSlice(query, slice).getResultList();
+    }
+
+    @Override
+    public long[] findActiveProductIdRange() {
+        Object[] range = entityManager.createQuery(
+                        "SELECT MIN(p.id), MAX(p.id) FROM Product p WHERE p.active = true", Object[].class)
+                .getSingleResult();
+        if (range[0] == null) {
+            return null;
+        }
+        return new long[] {((Number) range[0]).longValue(), ((Number) range[1]).longValue()};
+    }
+
+    @Override
+    public List<ProductSummaryDTO> findActiveProductSummariesAfter(long afterId, int limit) {
+        return entityManager.createQuery(SUMMARY_PROJECTION + " AND p.id > :afterId ORDER BY p.id", ProductSummaryDTO.class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public Stream<ProductSummaryDTO> streamActiveProductSummaries(int fetchSize) {
+        return stream(entityManager.createQuery(SUMMARY_PROJECTION + " ORDER BY p.id", ProductSummaryDTO.class), fetchSize);
+    }
+
+    private static <T> Stream<T> stream(TypedQuery<T> query, int fetchSize) {
+        return query
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    private static TypedQuery<ProductoDTO> bindSlice(TypedQuery<ProductoDTO> query, ProductShardSlice slice) {
+        if (slice != null) {
+            query.setParameter("shardCount", slice.shardCount()).setParameter("shards", slice.shards());
+        }
+        return query;
+    }
+}
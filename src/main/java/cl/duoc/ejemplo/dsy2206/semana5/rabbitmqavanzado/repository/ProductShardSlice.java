@@ -0,0 +1,15 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import java.util.Set;
+
+/**
+ * Subset of the catalog owned by one monitor instance: products whose {@code MOD(ID, shardCount)}
+ * is one of {@code shards}.
+ */
+public record ProductShardSlice(int shardCount, Set<Integer> shards) {
+
+    // Same sign convention as SQL MOD
+    public boolean contains(long productId) {
+        return shards.contains((int) (productId % shardCount));
+    }
+}
@@ -0,0 +1,20 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.StockMonitorNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface StockMonitorNodeRepository extends JpaRepository<StockMonitorNode, String> {
+
+    long countByHeartbeatAtAfter(LocalDateTime threshold);
+
+    @Modifying
+    @Query("DELETE FROM StockMonitorNode n WHERE n.heartbeatAt < :threshold")
+    int deleteStaleNodes(@Param("threshold") LocalDateTime threshold);
+}
@@ -0,0 +1,22 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.StockShardHandoff;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StockShardHandoffRepository extends JpaRepository<StockShardHandoff, Long> {
+
+    @Query("SELECT h FROM StockShardHandoff h WHERE h.shardId IN (:shardIds)")
+    List<StockShardHandoff> findByShardIds(@Param("shardIds") Collection<Integer> shardIds);
+
+    @Modifying
+    @Query("DELETE FROM StockShardHandoff h WHERE h.shardId IN (:shardIds)")
+    int deleteByShardIds(@Param("shardIds") Collection<Integer> shardIds);
+}
@@ -0,0 +1,48 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.StockShardLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StockShardLeaseRepository extends JpaRepository<StockShardLease, Integer> {
+
+    /**
+     * Takes the shard if it is free, already ours or its lease expired. The condition is evaluated
+     * by the UPDATE itself, so two instances can never both succeed.
+     *
+     * @return 1 if the shard is now owned by {@code owner}
+     */
+    @Modifying
+    @Query("UPDATE StockShardLease l SET l.ownerId = :owner, l.expiresAt = :expiresAt "
+            + "WHERE l.shardId = :shardId AND (l.ownerId IS NULL OR l.ownerId = :owner OR l.expiresAt < :now)")
+    int claim(@Param("shardId") Integer shardId,
+              @Param("owner") String owner,
+              @Param("expiresAt") LocalDateTime expiresAt,
+              @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE StockShardLease l SET l.expiresAt = :expiresAt WHERE l.ownerId = :owner")
+    int renew(@Param("owner") String owner, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("UPDATE StockShardLease l SET l.ownerId = NULL, l.expiresAt = NULL WHERE l.shardId = :shardId AND l.ownerId = :owner")
+    int release(@Param("shardId") Integer shardId, @Param("owner") String owner);
+
+    @Modifying
+    @Query("UPDATE StockShardLease l SET l.ownerId = NULL, l.expiresAt = NULL WHERE l.ownerId = :owner")
+    int releaseAll(@Param("owner") String owner);
+
+    @Query("SELECT l.shardId FROM StockShardLease l WHERE l.ownerId = :owner ORDER BY l.shardId")
+    List<Integer> findShardIdsOwnedBy(@Param("owner") String owner);
+
+    @Query("SELECT l.shardId FROM StockShardLease l WHERE l.shardId < :shardCount "
+            + "AND (l.ownerId IS NULL OR l.expiresAt < :now) ORDER BY l.shardId")
+    List<Integer> findClaimableShardIds(@Param("shardCount") int shardCount, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,173 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.EventMessageConverter;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch consumers of the stock and price change queues. The container hands over up to
+ * {@code messaging.batch.size} deliveries at a time (producer batches are split first), and each batch
+ * is folded into one per-product summary that is logged once, instead of paying conversion, logging
+ * and acknowledgement for every event.
+ * <p>
+ * Messages are decoded one by one, so an undecodable message is counted and skipped rather than
+ * failing, and redelivering, the whole batch.
+ */
+@Component
+public class ChangeEventBatchListener {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeEventBatchListener.class);
+
+    private final EventMessageConverter messageConverter;
+    private final DistributionSummary stockBatchSize;
+    private final DistributionSummary priceBatchSize;
+    private final Counter stockUndecodable;
+    private final Counter priceUndecodable;
+
+    public ChangeEventBatchListener(EventMessageConverter messageConverter, MeterRegistry meterRegistry) {
+        this.messageConverter = messageConverter;
+        this.stockBatchSize = batchSize(meterRegistry, RabbitMQConfig.STOCK_CHANGE_QUEUE);
+        this.priceBatchSize = batchSize(meterRegistry, RabbitMQConfig.PRICE_CHANGE_QUEUE);
+        this.stockUndecodable = undecodable(meterRegistry, RabbitMQConfig.STOCK_CHANGE_QUEUE);
+        this.priceUndecodable = undecodable(meterRegistry, RabbitMQConfig.PRICE_CHANGE_QUEUE);
+    }
+
+    @RabbitListener(id = "listener-stock-changes", queues = RabbitMQConfig.STOCK_CHANGE_QUEUE,
+            containerFactory = RabbitMQConfig.BATCH_CONTAINER_FACTORY)
+    public void onStockChanges(List<Message> messages) {
+        List<StockChangeEventDTO> events = decode(messages, StockChangeEventDTO.class, stockUndecodable);
+        stockBatchSize.record(events.size());
+        if (events.isEmpty()) {
+            return;
+        }
+        StockBatchSummary summary = summarizeStock(events);
+        logger.info("Stock batch: {} events for {} products, {} units sold, sales total ${}",
+                events.size(), summary.products().size(), summary.unitsSold(), summary.salesTotal());
+        if (logger.isDebugEnabled()) {
+            summary.products().values().forEach(product -> logger.debug("  {}", product));
+        }
+    }
+
+    @RabbitListener(id = "listener-price-changes", queues = RabbitMQConfig.PRICE_CHANGE_QUEUE,
+            containerFactory = RabbitMQConfig.BATCH_CONTAINER_FACTORY)
+    public void onPriceChanges(List<Message> messages) {
+        List<PriceChangeEventDTO> events = decode(messages, PriceChangeEventDTO.class, priceUndecodable);
+        priceBatchSize.record(events.size());
+        if (events.isEmpty()) {
+            return;
+        }
+        PriceBatchSummary summary = summarizePrices(events);
+        logger.info("Price batch: {} events for {} products, {} increases, {} decreases, largest change {}%",
+                events.size(), summary.products().size(), summary.increases(), summary.decreases(),
+                String.format("%.2f", summary.largestChangePercentage()));
+        if (logger.isDebugEnabled()) {
+            summary.products().values().forEach(product -> logger.debug("  {}", product));
+        }
+    }
+
+    /**
+     * Net effect of a batch per product: units sold and sales are summed, the quantity is the latest seen.
+     */
+    static StockBatchSummary summarizeStock(List<StockChangeEventDTO> events) {
+        Map<Long, ProductStockChange> products = new HashMap<>();
+        long unitsSold = 0;
+        BigDecimal salesTotal = BigDecimal.ZERO;
+        for (StockChangeEventDTO event : events) {
+            BigDecimal sale = event.getSaleTotal() != null ? event.getSaleTotal() : BigDecimal.ZERO;
+            products.merge(event.getProductId(),
+                    new ProductStockChange(event.getProductId(), event.getQuantityChanged(), event.getNewQuantity(), sale),
+                    (previous, next) -> new ProductStockChange(previous.productId(),
+                            previous.unitsSold() + next.unitsSold(), next.quantity(), previous.salesTotal().add(next.salesTotal())));
+            unitsSold += event.getQuantityChanged();
+            salesTotal = salesTotal.add(sale);
+        }
+        return new StockBatchSummary(products, unitsSold, salesTotal);
+    }
+
+    /**
+     * Net effect of a batch per product: the first old price and the last new price.
+     */
+    static PriceBatchSummary summarizePrices(List<PriceChangeEventDTO> events) {
+        Map<Long, ProductPriceChange> products = new HashMap<>();
+        int increases = 0;
+        int decreases = 0;
+        double largestChangePercentage = 0.0;
+        for (PriceChangeEventDTO event : events) {
+            products.merge(event.getProductId(),
+                    new ProductPriceChange(event.getProductId(), event.getOldPrice(), event.getNewPrice(), 1),
+                    (previous, next) -> new ProductPriceChange(previous.productId(), previous.firstPrice(),
+                            next.lastPrice(), previous.changes() + 1));
+            if ("INCREASE".equals(event.getChangeType())) {
+                increases++;
+            } else {
+                decreases++;
+            }
+            if (Math.abs(event.getChangePercentage()) > Math.abs(largestChangePercentage)) {
+                largestChangePercentage = event.getChangePercentage();
+            }
+        }
+        return new PriceBatchSummary(products, increases, decreases, largestChangePercentage);
+    }
+
+    private <T> List<T> decode(List<Message> messages, Class<T> type, Counter undecodable) {
+        List<T> events = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            // The JSON decoder has no listener parameter to infer the target type from
+            message.getMessageProperties().setInferredArgumentType(type);
+            try {
+                Object event = messageConverter.fromMessage(message);
+                if (type.isInstance(event)) {
+                    events.add(type.cast(event));
+                    continue;
+                }
+                logger.warn("Skipping message of type {} on a {} batch", event == null ? null : event.getClass().getName(), type.getSimpleName());
+            } catch (MessageConversionException e) {
+                logger.warn("Skipping undecodable {} message: {}", type.getSimpleName(), e.getMessage());
+            }
+            undecodable.increment();
+        }
+        return events;
+    }
+
+    private static DistributionSummary batchSize(MeterRegistry meterRegistry, String queue) {
+        return DistributionSummary.builder("messaging.batch.size")
+                .description("Events per consumed batch")
+                .tag("queue", queue)
+                .register(meterRegistry);
+    }
+
+    private static Counter undecodable(MeterRegistry meterRegistry, String queue) {
+        return Counter.builder("messaging.batch.undecodable")
+                .description("Messages skipped because they could not be decoded")
+                .tag("queue", queue)
+                .register(meterRegistry);
+    }
+
+    record ProductStockChange(Long productId, long unitsSold, int quantity, BigDecimal salesTotal) {
+    }
+
+    record StockBatchSummary(Map<Long, ProductStockChange> products, long unitsSold, BigDecimal salesTotal) {
+    }
+
+    record ProductPriceChange(Long productId, BigDecimal firstPrice, BigDecimal lastPrice, int changes) {
+    }
+
+    record PriceBatchSummary(Map<Long, ProductPriceChange> products, int increases, int decreases,
+                             double largestChangePercentage) {
+    }
+}
@@ -0,0 +1,16 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+/**
+ * At-least-once publishing backed by asynchronous publisher confirms.
+ */
+public interface ConfirmedPublishingService {
+
+    /**
+     * Hands the payload to the broker without waiting for its confirm. Blocks only while the
+     * in-flight window is full.
+     */
+    void publish(String exchange, String routingKey, Object payload);
+
+    /** Messages sent (or waiting for a retry) whose confirm has not arrived yet. */
+    int getInFlightCount();
+}
@@ -0,0 +1,37 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.InventoryUpdateDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Push ingestion of stock movements published by the inventory service. Each update is applied to the
+ * stock snapshot as it arrives, so stock change events no longer wait for the next database poll; the
+ * poll only reconciles what was not pushed.
+ */
+@Component
+@ConditionalOnProperty(value = "inventory.push.enabled", havingValue = "true")
+public class InventoryUpdateListener {
+    private static final Logger logger = LoggerFactory.getLogger(InventoryUpdateListener.class);
+
+    private final StockChangeMonitoringService stockChangeMonitoringService;
+
+    public InventoryUpdateListener(StockChangeMonitoringService stockChangeMonitoringService) {
+        this.stockChangeMonitoringService = stockChangeMonitoringService;
+    }
+
+    @RabbitListener(id = "listener-inventory-updates", queues = RabbitMQConfig.INVENTORY_UPDATE_QUEUE)
+    public void onInventoryUpdate(InventoryUpdateDTO update) {
+        if (update.getProductId() == null || (update.getNewQuantity() == null && update.getQuantityDelta() == null)) {
+            // Dead-lettered instead of requeued: it would fail the same way forever
+            throw new AmqpRejectAndDontRequeueException("Inventory update without product or quantity: " + update);
+        }
+        logger.debug("Inventory update received: {}", update);
+        stockChangeMonitoringService.applyInventoryUpdate(update);
+    }
+}
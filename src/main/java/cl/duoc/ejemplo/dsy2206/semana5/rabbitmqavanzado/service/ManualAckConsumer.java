@@ -0,0 +1,180 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Processing engine for manual-ack listeners. The listener thread only hands each delivery to a worker
+ * pool and returns, so a consumer keeps up to its prefetch count of messages in flight; the broker-side
+ * prefetch is what bounds memory.
+ * <p>
+ * Workers finish in any order, but acknowledgements follow delivery-tag order per channel: once the
+ * lowest outstanding tags are done, they are acknowledged with one cumulative {@code basicAck(tag, true)}
+ * (at least every {@code ackBatchSize} messages, or whenever nothing else is in flight). A failed
+ * message is rejected on its own ({@code requeue=false}, so it dead-letters) after everything before it
+ * was acknowledged, so a later cumulative ack never covers it. A message whose worker was interrupted
+ * (by {@link #shutdown(long)}) did not fail: it is left unacknowledged, and so is everything after it.
+ */
+public class ManualAckConsumer {
+    private static final Logger logger = LoggerFactory.getLogger(ManualAckConsumer.class);
+
+    private final String name;
+    private final ExecutorService workers;
+    private final int ackBatchSize;
+    private final Map<Channel, ChannelAcks> channels = new ConcurrentHashMap<>();
+
+    public ManualAckConsumer(String name, int workerThreads, int ackBatchSize) {
+        this.name = name;
+        this.ackBatchSize = Math.max(1, ackBatchSize);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), runnable -> {
+            Thread thread = new Thread(runnable, name + "-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers the delivery and processes it asynchronously; must be called on the listener thread,
+     * so deliveries are registered in tag order.
+     */
+    public void dispatch(Message message, Channel channel, Consumer<Message> handler) {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        ChannelAcks acks = channels.computeIfAbsent(channel, this::track);
+        acks.received(deliveryTag);
+        workers.execute(() -> {
+            boolean success;
+            try {
+                handler.accept(message);
+                success = true;
+            } catch (Exception e) {
+                if (interrupted(e)) {
+                    logger.info("{}: processing of delivery {} interrupted, leaving it for redelivery", name, deliveryTag);
+                    acks.interrupted(deliveryTag);
+                    return;
+                }
+                logger.warn("{}: processing of delivery {} failed: {}", name, deliveryTag, e.getMessage());
+                success = false;
+            }
+            acks.completed(deliveryTag, success);
+        });
+    }
+
+    public int getInFlightCount() {
+        return channels.values().stream().mapToInt(ChannelAcks::inFlight).sum();
+    }
+
+    /**
+     * Waits up to {@code timeoutMs} for in-flight messages, then interrupts the workers; anything
+     * unacknowledged after that, including the interrupted messages, is redelivered by the broker once the
+     * channel closes.
+     */
+    public void shutdown(long timeoutMs) {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Handlers typically restore the interrupt flag and rethrow the InterruptedException wrapped
+    private static boolean interrupted(Throwable failure) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ChannelAcks track(Channel channel) {
+        // Tags restart on a new channel, so the state of a closed one is dropped
+        channel.addShutdownListener(cause -> channels.remove(channel));
+        return new ChannelAcks(channel);
+    }
+
+    /**
+     * Outstanding deliveries of one channel, in tag order. All access is under the instance lock, which
+     * also serializes the ack frames sent on the channel.
+     */
+    private final class ChannelAcks {
+        private final Channel channel;
+        // Delivery tag -> null while processing, TRUE/FALSE once done
+        private final TreeMap<Long, Boolean> outstanding = new TreeMap<>();
+        private long ackableTag;
+        private int ackable;
+
+        ChannelAcks(Channel channel) {
+            this.channel = channel;
+        }
+
+        synchronized void received(long deliveryTag) {
+            outstanding.put(deliveryTag, null);
+        }
+
+        synchronized void completed(long deliveryTag, boolean success) {
+            outstanding.put(deliveryTag, success);
+            try {
+                Map.Entry<Long, Boolean> head;
+                while ((head = outstanding.firstEntry()) != null && head.getValue() != null) {
+                    outstanding.pollFirstEntry();
+                    if (head.getValue()) {
+                        ackableTag = head.getKey();
+                        ackable++;
+                    } else {
+                        flushAcks();
+                        channel.basicNack(head.getKey(), false, false);
+                    }
+                }
+                if (ackable >= ackBatchSize || outstanding.isEmpty()) {
+                    flushAcks();
+                }
+            } catch (IOException | RuntimeException e) {
+                // The channel is gone; the broker redelivers everything that was not acknowledged
+                logger.warn("{}: could not acknowledge up to delivery {}: {}", name, deliveryTag, e.getMessage());
+                outstanding.clear();
+                ackable = 0;
+            }
+        }
+
+        // The delivery stays outstanding, so no later ack covers it; the deliveries done before it are acked now
+        synchronized void interrupted(long deliveryTag) {
+            try {
+                flushAcks();
+            } catch (IOException | RuntimeException e) {
+                logger.warn("{}: could not acknowledge before delivery {}: {}", name, deliveryTag, e.getMessage());
+                ackable = 0;
+            }
+        }
+
+        synchronized int inFlight() {
+            return outstanding.size();
+        }
+
+        private void flushAcks() throws IOException {
+            if (ackable > 0) {
+                channel.basicAck(ackableTag, true);
+                ackable = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.FixedPoint;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.LongLongSnapshotMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Incremental price change detection for the price-change exchange.
+ * <p>
+ * Each scan reads, in keyset pages, only the rows whose LAST_PRICE_UPDATE moved past the high-watermark
+ * minus {@code price.monitoring.overlap-ms}, compares them against the last price seen per product and
+ * publishes the changes that reach {@code price.monitoring.change-threshold} percent in batches.
+ */
+@Service
+@ConditionalOnProperty(value = "price.monitoring.enabled", havingValue = "true", matchIfMissing = true)
+public class PriceChangeMonitoringService {
+    private static final Logger logger = LoggerFactory.getLogger(PriceChangeMonitoringService.class);
+
+    private static final LocalDateTime SEED_POSITION = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final ProductRepository productRepository;
+    private final PriceChangeNotificationService priceChangeNotificationService;
+    private final ProductCache productCache;
+    // Absent when price.history.enabled is off
+    private final PriceHistoryStore priceHistory;
+    // Last seen price per product in minor units (PRICE has scale 2)
+    private final LongLongSnapshotMap lastKnownPrices;
+
+    @Value("${price.monitoring.change-threshold:5.0}")
+    private double changeThreshold;
+
+    @Value("${price.monitoring.page-size:1000}")
+    private int pageSize;
+
+    @Value("${price.monitoring.publish-batch-size:500}")
+    private int publishBatchSize;
+
+    @Value("${price.monitoring.overlap-ms:5000}")
+    private long overlapMs;
+
+    // Highest (lastPriceUpdate, id) read so far; scans start overlap-ms behind it, it only moves forward
+    private LocalDateTime watermarkTimestamp;
+    private long watermarkId;
+    private volatile boolean seeded;
+    private volatile LocalDateTime lastScanTime;
+    private volatile int lastScanRows;
+    private final AtomicLong detectedChanges = new AtomicLong();
+    private final AtomicLong belowThresholdChanges = new AtomicLong();
+    // Fixed-rate runs overlap on a virtual-thread scheduler when a scan outlasts the interval
+    private final ReentrantLock scanLock = new ReentrantLock();
+
+    public PriceChangeMonitoringService(ProductRepository productRepository,
+                                        PriceChangeNotificationService priceChangeNotificationService,
+                                        ProductCache productCache,
+                                        ObjectProvider<PriceHistoryStore> priceHistory,
+                                        @Value("${stock.monitoring.expected-products:100000}") int expectedProducts) {
+        this.productRepository = productRepository;
+        this.priceChangeNotificationService = priceChangeNotificationService;
+        this.productCache = productCache;
+        this.priceHistory = priceHistory.getIfAvailable();
+        this.lastKnownPrices = new LongLongSnapshotMap(expectedProducts);
+    }
+
+    @Scheduled(fixedRateString = "${price.monitoring.scan-interval:30000}")
+    @Transactional(readOnly = true)
+    public void monitorPriceChanges() {
+        if (!scanLock.tryLock()) {
+            logger.debug("Previous price scan still running, skipping");
+            return;
+        }
+        try {
+            if (!seeded) {
+                seed();
+                return;
+            }
+            scanChangedPrices();
+        } catch (Exception e) {
+            logger.error("Error during price monitoring scan: {}", e.getMessage(), e);
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("notificationsEnabled", priceChangeNotificationService.isNotificationsEnabled());
+        status.put("changeThreshold", changeThreshold);
+        status.put("seeded", seeded);
+        status.put("trackedProducts", lastKnownPrices.size());
+        status.put("lastScanTime", lastScanTime);
+        status.put("lastScanRows", lastScanRows);
+        status.put("detectedChanges", detectedChanges.get());
+        status.put("belowThresholdChanges", belowThresholdChanges.get());
+        if (priceHistory != null) {
+            status.put("historyRecords", priceHistory.size());
+        }
+        return status;
+    }
+
+    /**
+     * Records the current price of every active product without emitting events, so later scans have a baseline.
+     */
+    private void seed() {
+        watermarkTimestamp = SEED_POSITION;
+        watermarkId = 0L;
+        int rows = readPages(SEED_POSITION, 0L, false);
+        seeded = true;
+        logger.info("Price monitoring baseline built for {} products", rows);
+    }
+
+    private void scanChangedPrices() {
+        // Re-reads a small window behind the watermark for writers that committed late; the snapshot filters repeats.
+        // Computed from the watermark on every scan, so quiet periods do not push the start further back
+        int rows = overlapMs > 0
+                ? readPages(watermarkTimestamp.minusNanos(overlapMs * 1_000_000L), 0L, true)
+                : readPages(watermarkTimestamp, watermarkId, true);
+        lastScanTime = LocalDateTime.now();
+        lastScanRows = rows;
+        logger.debug("Price scan read {} changed rows", rows);
+    }
+
+    private int readPages(LocalDateTime fromTimestamp, long fromId, boolean emit) {
+        PageRequest page = PageRequest.of(0, pageSize);
+        LocalDateTime positionTimestamp = fromTimestamp;
+        long positionId = fromId;
+        List<PriceChangeEventDTO> pending = new ArrayList<>(emit ? publishBatchSize : 0);
+        int rows = 0;
+        List<ProductoDTO> products;
+        do {
+            products = productRepository.findActiveProductPricesChangedAfter(positionTimestamp, positionId, page);
+            for (ProductoDTO product : products) {
+                PriceChangeEventDTO event = detectPriceChange(product, emit);
+                if (event != null) {
+                    pending.add(event);
+                    if (pending.size() >= publishBatchSize) {
+                        priceChangeNotificationService.notifyPriceChanges(pending);
+                        pending = new ArrayList<>(publishBatchSize);
+                    }
+                }
+            }
+            if (!products.isEmpty()) {
+                ProductoDTO last = products.get(products.size() - 1);
+                positionTimestamp = last.getLastPriceUpdate();
+                positionId = last.getId();
+                advanceWatermark(positionTimestamp, positionId);
+                rows += products.size();
+            }
+        } while (products.size() == pageSize);
+        priceChangeNotificationService.notifyPriceChanges(pending);
+        return rows;
+    }
+
+    private void advanceWatermark(LocalDateTime timestamp, long id) {
+        if (timestamp.isAfter(watermarkTimestamp) || (timestamp.isEqual(watermarkTimestamp) && id > watermarkId)) {
+            watermarkTimestamp = timestamp;
+            watermarkId = id;
+        }
+    }
+
+    private PriceChangeEventDTO detectPriceChange(ProductoDTO product, boolean emit) {
+        if (product.getPrice() == null) {
+            return null;
+        }
+        long newCents = FixedPoint.toMinorUnits(product.getPrice());
+        recordHistory(product, newCents);
+        long oldCents = lastKnownPrices.update(product.getId(), newCents);
+        if (oldCents == LongLongSnapshotMap.NO_VALUE) {
+            // First sighting after the baseline: the row itself still carries the price it replaced
+            if (!emit || product.getPreviousPrice() == null) {
+                return null;
+            }
+            oldCents = FixedPoint.toMinorUnits(product.getPreviousPrice());
+        }
+        if (!emit || oldCents == newCents) {
+            return null;
+        }
+        productCache.invalidate(product.getId(), product.getCategory());
+        detectedChanges.incrementAndGet();
+        // Same rounding as Product.getPriceChangePercentage(), in cents; BigDecimals only for emitted events
+        double changePercentage = FixedPoint.changePercentage(oldCents, newCents);
+        if (Math.abs(changePercentage) < changeThreshold) {
+            belowThresholdChanges.incrementAndGet();
+            return null;
+        }
+        return PriceChangeEventDTO.builder()
+                .productId(product.getId())
+                .productName(product.getName())
+                .productCategory(product.getCategory())
+                .oldPrice(FixedPoint.toBigDecimal(oldCents))
+                .newPrice(FixedPoint.toBigDecimal(newCents))
+                .changeAmount(FixedPoint.toBigDecimal(newCents - oldCents))
+                .changePercentage(changePercentage)
+                .changeType(newCents > oldCents ? "INCREASE" : "DECREASE")
+                .changeTimestamp(product.getLastPriceUpdate())
+                .changeReason("PRICE_SCAN")
+                .build();
+    }
+
+    // Every price seen, including the baseline and changes below the threshold; the store drops repeats
+    private void recordHistory(ProductoDTO product, long cents) {
+        if (priceHistory == null) {
+            return;
+        }
+        try {
+            LocalDateTime timestamp = product.getLastPriceUpdate() != null ? product.getLastPriceUpdate() : LocalDateTime.now();
+            priceHistory.append(product.getId(), timestamp, cents);
+        } catch (RuntimeException e) {
+            logger.warn("Could not record price history of product ID {}: {}", product.getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+
+import java.util.List;
+
+public interface PriceChangeNotificationService {
+    void notifyPriceChange(PriceChangeEventDTO priceChangeEvent);
+    void notifyPriceChanges(List<PriceChangeEventDTO> priceChangeEvents);
+    void setNotificationsEnabled(boolean enabled);
+    boolean isNotificationsEnabled();
+}
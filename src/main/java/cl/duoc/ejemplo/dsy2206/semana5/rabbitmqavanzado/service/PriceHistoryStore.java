@@ -0,0 +1,347 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PricePointDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.LongLongSnapshotMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Append-only price history of every product, kept in memory-mapped segment files so charts are
+ * served without touching Oracle.
+ * <p>
+ * Every record is 28 bytes: product ID, price in minor units (PRICE has scale 2), the number of the
+ * product's previous record, and epoch second. Records are numbered across segments with a long that
+ * never restarts, so numbers stay unique while old segments are deleted, and each product's
+ * records form a backward chain from its newest one, whose number is the only per-product state kept on
+ * the heap (rebuilt from the files at startup). Last-N and time-range reads walk that chain, so they
+ * cost the points returned plus the newer points skipped, independent of the size of the store.
+ * <p>
+ * An append with the price already on record for the product is dropped, so re-reading unchanged rows
+ * is harmless. A segment holds {@code price.history.segment-records} records; when a new one is
+ * started, the oldest segments whose newest record is older than {@code price.history.retention} are
+ * deleted. Writes reach the page cache immediately and disk on segment roll and shutdown.
+ */
+@Component
+@ConditionalOnProperty(value = "price.history.enabled", havingValue = "true", matchIfMissing = true)
+public class PriceHistoryStore {
+    private static final Logger logger = LoggerFactory.getLogger(PriceHistoryStore.class);
+
+    private static final int MAGIC = 0x50565048; // "PVPH"
+    // 2: long record numbers (version 1 segments are set aside at startup)
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4;
+    private static final int COUNT_OFFSET = HEADER_BYTES - 4;
+    private static final int RECORD_BYTES = 8 + 8 + 8 + 4;
+    private static final long NO_RECORD = -1L;
+    private static final String SEGMENT_PREFIX = "prices-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final Duration retention;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock: segments in record order, newest product record numbers, next record number
+    private final List<Segment> segments = new ArrayList<>();
+    private final LongLongSnapshotMap newestRecords = new LongLongSnapshotMap();
+    private long nextRecord;
+
+    public PriceHistoryStore(@Value("${price.history.directory:data/price-history}") String directory,
+                             @Value("${price.history.segment-records:1048576}") int segmentRecords,
+                             @Value("${price.history.retention:180d}") Duration retention) {
+        if (segmentRecords <= 0 || segmentRecords > (Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES) {
+            throw new IllegalArgumentException("price.history.segment-records out of range: " + segmentRecords);
+        }
+        this.directory = Paths.get(directory);
+        this.segmentRecords = segmentRecords;
+        this.retention = retention;
+    }
+
+    /**
+     * Maps the existing segments and rebuilds the newest record of every product.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        lock.writeLock().lock();
+        try {
+            Files.createDirectories(directory);
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                stream.forEach(files::add);
+            }
+            Collections.sort(files);
+            for (int f = 0; f < files.size(); f++) {
+                Segment segment = Segment.open(files.get(f));
+                if (segment == null || (!segments.isEmpty() && segment.firstRecord != nextRecord)) {
+                    // Set aside, so new segments can take their names
+                    logger.warn("Ignoring unreadable price history segment {} and the {} after it", files.get(f), files.size() - f - 1);
+                    for (Path ignored : files.subList(f, files.size())) {
+                        Files.move(ignored, ignored.resolveSibling(ignored.getFileName() + ".ignored"), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    break;
+                }
+                segments.add(segment);
+                for (int i = 0; i < segment.count; i++) {
+                    newestRecords.update(segment.productId(i), segment.firstRecord + i);
+                }
+                nextRecord = segment.firstRecord + segment.count;
+            }
+            logger.info("Price history opened: {} records of {} products in {} segments",
+                    size(), newestRecords.size(), segments.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            segments.forEach(segment -> segment.buffer.force());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records the product's price as of {@code timestamp}. A timestamp older than the product's newest
+     * record is moved up to it, so every chain stays in time order.
+     *
+     * @return false if the price equals the last one on record
+     */
+    public boolean append(long productId, LocalDateTime timestamp, long priceMinorUnits) {
+        long epochSecond = timestamp.atZone(ZoneId.systemDefault()).toEpochSecond();
+        lock.writeLock().lock();
+        try {
+            long previous = newestRecord(productId);
+            if (previous != NO_RECORD) {
+                Segment segment = segmentOf(previous);
+                int index = (int) (previous - segment.firstRecord);
+                if (segment.priceMinorUnits(index) == priceMinorUnits) {
+                    return false;
+                }
+                epochSecond = Math.max(epochSecond, segment.epochSecond(index));
+            }
+            if (nextRecord == Long.MAX_VALUE) {
+                throw new IllegalStateException("Price history record numbers exhausted in " + directory);
+            }
+            Segment segment = writableSegment();
+            segment.append(productId, priceMinorUnits, epochSecond, previous);
+            newestRecords.update(productId, nextRecord++);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not extend the price history in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The product's newest {@code limit} prices, oldest first.
+     */
+    public List<PricePointDTO> latest(long productId, int limit) {
+        return read(productId, Long.MIN_VALUE, Long.MAX_VALUE, limit);
+    }
+
+    /**
+     * Prices recorded between {@code from} and {@code to} (inclusive), oldest first; when there are
+     * more than {@code limit}, the newest ones are returned.
+     */
+    public List<PricePointDTO> range(long productId, LocalDateTime from, LocalDateTime to, int limit) {
+        return read(productId, from.atZone(ZoneId.systemDefault()).toEpochSecond(),
+                to.atZone(ZoneId.systemDefault()).toEpochSecond(), limit);
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return segments.isEmpty() ? 0 : nextRecord - segments.get(0).firstRecord;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<PricePointDTO> read(long productId, long fromSecond, long toSecond, int limit) {
+        List<PricePointDTO> points = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            long record = newestRecord(productId);
+            while (record != NO_RECORD && points.size() < limit) {
+                Segment segment = segmentOf(record);
+                int index = (int) (record - segment.firstRecord);
+                long epochSecond = segment.epochSecond(index);
+                if (epochSecond < fromSecond) {
+                    break;
+                }
+                if (epochSecond <= toSecond) {
+                    points.add(new PricePointDTO(
+                            LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault()),
+                            BigDecimal.valueOf(segment.priceMinorUnits(index), 2)));
+                }
+                record = retained(segment.previous(index));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Collections.reverse(points);
+        return points;
+    }
+
+    // Caller holds the lock
+    private long newestRecord(long productId) {
+        long record = newestRecords.get(productId);
+        return record == LongLongSnapshotMap.NO_VALUE ? NO_RECORD : retained(record);
+    }
+
+    // NO_RECORD for records of deleted segments
+    private long retained(long record) {
+        return record == NO_RECORD || segments.isEmpty() || record < segments.get(0).firstRecord ? NO_RECORD : record;
+    }
+
+    private Segment segmentOf(long record) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).firstRecord <= record) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return segments.get(low);
+    }
+
+    // Caller holds the write lock
+    private Segment writableSegment() throws IOException {
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last != null && last.count < last.capacity) {
+            return last;
+        }
+        if (last != null) {
+            last.buffer.force();
+        }
+        Path file = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, nextRecord, SEGMENT_SUFFIX));
+        Segment segment = Segment.create(file, nextRecord, segmentRecords);
+        segments.add(segment);
+        dropExpiredSegments();
+        return segment;
+    }
+
+    // Never drops the newest segment, so the store keeps at least one segment of history
+    private void dropExpiredSegments() throws IOException {
+        long cutoff = Instant.now().minus(retention).getEpochSecond();
+        while (segments.size() > 1) {
+            Segment oldest = segments.get(0);
+            if (oldest.count > 0 && oldest.epochSecond(oldest.count - 1) >= cutoff) {
+                return;
+            }
+            segments.remove(0);
+            Files.deleteIfExists(oldest.file);
+            logger.info("Deleted expired price history segment {}", oldest.file);
+        }
+    }
+
+    /**
+     * One mapped segment file: header (magic, version, first record number, capacity, count) and
+     * fixed-size records.
+     */
+    private static final class Segment {
+        final Path file;
+        final MappedByteBuffer buffer;
+        final long firstRecord;
+        final int capacity;
+        int count;
+
+        private Segment(Path file, MappedByteBuffer buffer, long firstRecord, int capacity, int count) {
+            this.file = file;
+            this.buffer = buffer;
+            this.firstRecord = firstRecord;
+            this.capacity = capacity;
+            this.count = count;
+        }
+
+        static Segment create(Path file, long firstRecord, int capacity) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_BYTES + (long) capacity * RECORD_BYTES);
+                buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putLong(8, firstRecord).putInt(16, capacity).putInt(COUNT_OFFSET, 0);
+                return new Segment(file, buffer, firstRecord, capacity, 0);
+            }
+        }
+
+        static Segment open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() < HEADER_BYTES) {
+                    return null;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                    return null;
+                }
+                int capacity = buffer.getInt(16);
+                int count = buffer.getInt(COUNT_OFFSET);
+                if (count < 0 || count > capacity || channel.size() < HEADER_BYTES + (long) capacity * RECORD_BYTES) {
+                    return null;
+                }
+                return new Segment(file, buffer, buffer.getLong(8), capacity, count);
+            }
+        }
+
+        // The count is published after the record, so a crash mid-append never exposes a partial record
+        void append(long productId, long priceMinorUnits, long epochSecond, long previous) {
+            int offset = offset(count);
+            buffer.putLong(offset, productId)
+                    .putLong(offset + 8, priceMinorUnits)
+                    .putLong(offset + 16, previous)
+                    .putInt(offset + 24, (int) epochSecond);
+            buffer.putInt(COUNT_OFFSET, ++count);
+        }
+
+        long productId(int index) {
+            return buffer.getLong(offset(index));
+        }
+
+        long priceMinorUnits(int index) {
+            return buffer.getLong(offset(index) + 8);
+        }
+
+        // Stored unsigned: good until 2106
+        long epochSecond(int index) {
+            return Integer.toUnsignedLong(buffer.getInt(offset(index) + 24));
+        }
+
+        long previous(int index) {
+            return buffer.getLong(offset(index) + 16);
+        }
+
+        private static int offset(int index) {
+            return HEADER_BYTES + index * RECORD_BYTES;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache in front of {@link ProductRepository} for the monitoring REST endpoints.
+ * <p>
+ * Products are indexed by ID, and the active and per-category listings are cached as lists of those
+ * products. Both indexes are LRU maps bounded by {@code product.cache.max-size} products; listings
+ * larger than that bound are always read from the database. The stock and price monitors call
+ * {@link #invalidate(Long, String)} for every change they observe, and {@code product.cache.ttl} bounds
+ * the staleness of changes no poll sees (names, activation).
+ */
+@Component
+public class ProductCache {
+
+    private static final String ACTIVE_KEY = "";
+
+    private final ProductRepository productRepository;
+    private final boolean enabled;
+    private final int maxSize;
+    private final long ttlMs;
+
+    // Guarded by this; access order, so the eldest entry is the least recently used
+    private final LinkedHashMap<Long, Entry<ProductSummaryDTO>> byId;
+    // Key is the category, or ACTIVE_KEY for the active listing; also guarded by this
+    private final LinkedHashMap<String, Entry<List<ProductSummaryDTO>>> listings;
+    private int listedProducts;
+    // Bumped by every invalidation, so a load that raced with one is not cached
+    private long generation;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+
+    public ProductCache(ProductRepository productRepository,
+                        MeterRegistry meterRegistry,
+                        @Value("${product.cache.enabled:true}") boolean enabled,
+                        @Value("${product.cache.max-size:10000}") int maxSize,
+                        @Value("${product.cache.ttl:30000}") long ttlMs) {
+        this.productRepository = productRepository;
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.ttlMs = ttlMs;
+        this.byId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry<ProductSummaryDTO>> eldest) {
+                return size() > ProductCache.this.maxSize;
+            }
+        };
+        this.listings = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = Counter.builder("product.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("product.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.invalidations = Counter.builder("product.cache.invalidations").register(meterRegistry);
+        Gauge.builder("product.cache.size", this, ProductCache::size)
+                .description("Products cached by ID")
+                .register(meterRegistry);
+        Gauge.builder("product.cache.hit.ratio", this, ProductCache::hitRatio)
+                .register(meterRegistry);
+        Gauge.builder("product.cache.staleness", this, ProductCache::oldestEntryAgeMillis)
+                .description("Age in milliseconds of the oldest cached entry that can still be served")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    public Optional<ProductSummaryDTO> getProduct(Long id) {
+        if (!enabled) {
+            return productRepository.findProductSummaryById(id);
+        }
+        long now = System.currentTimeMillis();
+        long loadGeneration;
+        synchronized (this) {
+            Entry<ProductSummaryDTO> entry = byId.get(id);
+            if (entry != null && !entry.isExpired(now, ttlMs)) {
+                hits.increment();
+                return Optional.of(entry.value);
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        Optional<ProductSummaryDTO> product = productRepository.findProductSummaryById(id);
+        if (product.isPresent()) {
+            synchronized (this) {
+                if (loadGeneration == generation) {
+                    byId.put(product.get().getId(), new Entry<>(product.get(), now));
+                }
+            }
+        }
+        return product;
+    }
+
+    public List<ProductSummaryDTO> getActiveProducts() {
+        return getListing(ACTIVE_KEY, productRepository::findActiveProductSummaries);
+    }
+
+    public List<ProductSummaryDTO> getActiveProductsByCategory(String category) {
+        return getListing(category, () -> productRepository.findActiveProductSummariesByCategory(category));
+    }
+
+    /**
+     * Drops a changed product and every listing it may appear in. {@code category} is the product's
+     * current category; the category it was cached under is dropped as well, in case it moved.
+     */
+    public synchronized void invalidate(Long productId, String category) {
+        if (!enabled) {
+            return;
+        }
+        Entry<ProductSummaryDTO> cached = byId.remove(productId);
+        if (cached != null && cached.value.getCategory() != null) {
+            removeListing(cached.value.getCategory());
+        }
+        if (category != null) {
+            removeListing(category);
+        }
+        removeListing(ACTIVE_KEY);
+        generation++;
+        invalidations.increment();
+    }
+
+    public synchronized void clear() {
+        byId.clear();
+        listings.clear();
+        listedProducts = 0;
+        generation++;
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    public double hitRatio() {
+        double requests = hits.count() + misses.count();
+        return requests == 0 ? 0.0 : hits.count() / requests;
+    }
+
+    private List<ProductSummaryDTO> getListing(String key, Supplier<List<ProductSummaryDTO>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        long now = System.currentTimeMillis();
+        long loadGeneration;
+        synchronized (this) {
+            Entry<List<ProductSummaryDTO>> entry = listings.get(key);
+            if (entry != null && !entry.isExpired(now, ttlMs)) {
+                hits.increment();
+                return entry.value;
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        List<ProductSummaryDTO> products = List.copyOf(loader.get());
+        if (products.size() <= maxSize) {
+            synchronized (this) {
+                if (loadGeneration != generation) {
+                    return products;
+                }
+                removeListing(key);
+                listings.put(key, new Entry<>(products, now));
+                listedProducts += products.size();
+                // Evict least recently used listings until the listed products fit the bound again
+                Iterator<Map.Entry<String, Entry<List<ProductSummaryDTO>>>> eldest = listings.entrySet().iterator();
+                while (listedProducts > maxSize && eldest.hasNext()) {
+                    listedProducts -= eldest.next().getValue().value.size();
+                    eldest.remove();
+                }
+                products.forEach(product -> byId.put(product.getId(), new Entry<>(product, now)));
+            }
+        }
+        return products;
+    }
+
+    private void removeListing(String key) {
+        Entry<List<ProductSummaryDTO>> removed = listings.remove(key);
+        if (removed != null) {
+            listedProducts -= removed.value.size();
+        }
+    }
+
+    // Expired entries are never served, they only wait for their key or the LRU bound to drop them
+    private synchronized double oldestEntryAgeMillis() {
+        long now = System.currentTimeMillis();
+        long oldest = Long.MAX_VALUE;
+        for (Entry<ProductSummaryDTO> entry : byId.values()) {
+            if (!entry.isExpired(now, ttlMs)) {
+                oldest = Math.min(oldest, entry.loadedAt);
+            }
+        }
+        for (Entry<List<ProductSummaryDTO>> entry : listings.values()) {
+            if (!entry.isExpired(now, ttlMs)) {
+                oldest = Math.min(oldest, entry.loadedAt);
+            }
+        }
+        return oldest == Long.MAX_VALUE ? 0.0 : now - oldest;
+    }
+
+    private record Entry<T>(T value, long loadedAt) {
+
+        boolean isExpired(long now, long ttlMs) {
+            return now - loadedAt >= ttlMs;
+        }
+    }
+}
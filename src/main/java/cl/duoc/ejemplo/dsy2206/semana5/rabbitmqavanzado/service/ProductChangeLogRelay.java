@@ -0,0 +1,250 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.ProductChangeLog;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductChangeLogRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductShardSlice;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.FixedPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbox relay: drains PRODUCT_CHANGE_LOG in CHANGE_ID order and publishes every stock decrease to the
+ * stock-change exchange and every price change to the price-change exchange.
+ * <p>
+ * Each batch is claimed first (a short transaction marks the rows with this relay's ID), then published
+ * as mandatory messages with correlated publisher confirms, and only the rows whose every event the broker
+ * acked are deleted. Nacked, returned or unconfirmed rows stay claimed and are published again on the next
+ * run, with their claim renewed; until they are all confirmed this relay claims nothing new, so a broker
+ * outage does not pile up claims and a retried change is not overtaken by a later batch. A relay that dies
+ * between claim and delete leaves its rows claimed until {@code outbox.relay.claim-timeout} passes, after
+ * which any relay takes them again, so delivery is at-least-once. With sharding enabled, each instance only
+ * relays the changes of its own shards, which also keeps the changes of one product in order unless one of
+ * them has to be re-published.
+ */
+@Service
+@ConditionalOnProperty(value = "outbox.relay.enabled", havingValue = "true")
+public class ProductChangeLogRelay {
+    private static final Logger logger = LoggerFactory.getLogger(ProductChangeLogRelay.class);
+
+
+    private final ProductChangeLogRepository changeLogRepository;
+    private final RabbitTemplate confirmingRabbitTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StockShardCoordinator shardCoordinator;
+    private final String relayId;
+
+    @Value("${outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    @Value("${outbox.relay.claim-timeout:60000}")
+    private long claimTimeoutMs;
+
+    @Value("${outbox.relay.confirm-timeout:10000}")
+    private long confirmTimeoutMs;
+
+    @Value("${price.monitoring.change-threshold:5.0}")
+    private double priceChangeThreshold;
+
+    private final AtomicLong relayedChanges = new AtomicLong();
+
+    public ProductChangeLogRelay(ProductChangeLogRepository changeLogRepository,
+                                 @Qualifier("confirmingRabbitTemplate") RabbitTemplate confirmingRabbitTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 ObjectProvider<StockShardCoordinator> shardCoordinator) {
+        this.changeLogRepository = changeLogRepository;
+        this.confirmingRabbitTemplate = confirmingRabbitTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shardCoordinator = shardCoordinator.getIfAvailable();
+        this.relayId = this.shardCoordinator != null ? this.shardCoordinator.getNodeId() : "relay-" + UUID.randomUUID();
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval:1000}")
+    public void relayChanges() {
+        try {
+            int relayed;
+            int total = 0;
+            do {
+                relayed = relayBatch();
+                total += relayed;
+            } while (relayed == batchSize);
+            if (total > 0) {
+                logger.debug("Relayed {} product changes", total);
+            }
+        } catch (Exception e) {
+            logger.error("Error relaying product change log: {}", e.getMessage(), e);
+        }
+    }
+
+    public long getRelayedChanges() {
+        return relayedChanges.get();
+    }
+
+    /**
+     * Claims and publishes one batch, and deletes the rows the broker confirmed.
+     *
+     * @return number of change log rows relayed
+     */
+    int relayBatch() {
+        ProductShardSlice slice = null;
+        if (shardCoordinator != null) {
+            slice = shardCoordinator.currentSlice();
+            if (slice == null) {
+                return 0;
+            }
+        }
+        // Rows this relay claimed earlier but could not get confirmed go first, and alone
+        List<ProductChangeLog> changes = transactionTemplate.execute(status ->
+                changeLogRepository.renewClaims(relayId, LocalDateTime.now()) > 0
+                        ? changeLogRepository.findClaimedBy(relayId, PageRequest.of(0, batchSize))
+                        : List.of());
+        if (changes != null && changes.isEmpty()) {
+            claim(slice);
+            changes = transactionTemplate.execute(status ->
+                    changeLogRepository.findClaimedBy(relayId, PageRequest.of(0, batchSize)));
+        }
+        if (changes == null || changes.isEmpty()) {
+            return 0;
+        }
+        List<Long> confirmed = publish(changes);
+        if (!confirmed.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> changeLogRepository.deleteByIdIn(confirmed));
+        }
+        if (confirmed.size() < changes.size()) {
+            logger.warn("{} of {} product changes were not confirmed by the broker, keeping them for the next run",
+                    changes.size() - confirmed.size(), changes.size());
+        }
+        relayedChanges.addAndGet(confirmed.size());
+        return confirmed.size();
+    }
+
+    private void claim(ProductShardSlice slice) {
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime abandonedBefore = now.minusNanos(claimTimeoutMs * 1_000_000L);
+            if (slice == null) {
+                changeLogRepository.claimBatch(relayId, now, abandonedBefore, batchSize);
+            } else {
+                changeLogRepository.claimBatchInSlice(relayId, now, abandonedBefore, batchSize,
+                        slice.shardCount(), slice.shards());
+            }
+        });
+    }
+
+    /**
+     * Sends the whole batch, then waits up to {@code outbox.relay.confirm-timeout} for the confirms. A send
+     * failure propagates before the delete, so the batch stays claimed and is retried.
+     *
+     * @return IDs of the rows whose events were all acked and none returned
+     */
+    private List<Long> publish(List<ProductChangeLog> changes) {
+        List<List<CorrelationData>> sent = new ArrayList<>(changes.size());
+        for (ProductChangeLog change : changes) {
+            List<CorrelationData> correlations = new ArrayList<>(2);
+            StockChangeEventDTO stockEvent = toStockEvent(change);
+            if (stockEvent != null) {
+                correlations.add(send(RabbitMQConfig.STOCK_CHANGE_EXCHANGE, RabbitMQConfig.STOCK_CHANGE_ROUTING_KEY, stockEvent));
+            }
+            PriceChangeEventDTO priceEvent = toPriceEvent(change);
+            if (priceEvent != null) {
+                correlations.add(send(RabbitMQConfig.PRICE_CHANGE_EXCHANGE, RabbitMQConfig.PRICE_CHANGE_ROUTING_KEY, priceEvent));
+            }
+            sent.add(correlations);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        List<Long> confirmed = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            if (sent.get(i).stream().allMatch(correlation -> isConfirmed(correlation, deadline))) {
+                confirmed.add(changes.get(i).getId());
+            }
+        }
+        return confirmed;
+    }
+
+    private CorrelationData send(String exchange, String routingKey, Object event) {
+        CorrelationData correlation = new CorrelationData(UUID.randomUUID().toString());
+        confirmingRabbitTemplate.convertAndSend(exchange, routingKey, event, correlation);
+        return correlation;
+    }
+
+    // The returned message, if any, is set before the confirm completes the future
+    private static boolean isConfirmed(CorrelationData correlation, long deadline) {
+        try {
+            CorrelationData.Confirm confirm = correlation.getFuture()
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return confirm.isAck() && correlation.getReturned() == null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    static StockChangeEventDTO toStockEvent(ProductChangeLog change) {
+        if (change.getOldQuantity() == null || change.getNewQuantity() == null
+                || change.getNewQuantity() >= change.getOldQuantity()) {
+            return null;
+        }
+        int quantityChanged = change.getOldQuantity() - change.getNewQuantity();
+        BigDecimal price = change.getNewPrice() != null ? change.getNewPrice() : change.getOldPrice();
+        return StockChangeEventDTO.builder()
+                .productId(change.getProductId())
+                .productName(change.getProductName())
+                .productCategory(change.getProductCategory())
+                .quantityChanged(quantityChanged)
+                .newQuantity(change.getNewQuantity())
+                .saleTotal(price != null ? price.multiply(BigDecimal.valueOf(quantityChanged)) : BigDecimal.ZERO)
+                .changeTimestamp(change.getChangedAt())
+                .build();
+    }
+
+    PriceChangeEventDTO toPriceEvent(ProductChangeLog change) {
+        BigDecimal oldPrice = change.getOldPrice();
+        BigDecimal newPrice = change.getNewPrice();
+        if (oldPrice == null || newPrice == null || oldPrice.compareTo(newPrice) == 0) {
+            return null;
+        }
+        // Same rounding as Product.getPriceChangePercentage()
+        double changePercentage = FixedPoint.changePercentage(oldPrice, newPrice);
+        if (Math.abs(changePercentage) < priceChangeThreshold) {
+            return null;
+        }
+        BigDecimal changeAmount = newPrice.subtract(oldPrice);
+        return PriceChangeEventDTO.builder()
+                .productId(change.getProductId())
+                .productName(change.getProductName())
+                .productCategory(change.getProductCategory())
+                .oldPrice(oldPrice)
+                .newPrice(newPrice)
+                .changeAmount(changeAmount)
+                .changePercentage(changePercentage)
+                .changeType(changeAmount.signum() > 0 ? "INCREASE" : "DECREASE")
+                .changeTimestamp(change.getChangedAt())
+                .changeReason("CHANGE_LOG")
+                .build();
+    }
+}
@@ -0,0 +1,334 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesWindowDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.FixedPoint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory sales aggregation over the stock changes the monitor detects, so dashboards can read
+ * revenue per category or product for recent windows without querying Oracle.
+ * <p>
+ * Sales are added to the bucket of the moment they are recorded ({@code sales.aggregation.bucket}
+ * long). Every sliding window keeps running totals, per category and per product, of the buckets it
+ * spans; when time moves past a bucket, that bucket's totals are subtracted from the windows it
+ * leaves. A read is then a map lookup, and each sale is added and expired once per window. Sliding
+ * windows are bucket-aligned: they cover between {@code window - bucket} and {@code window}.
+ * <p>
+ * Tumbling windows are aligned to multiples of their length; the open one and the last closed one are
+ * kept. Totals restart empty with the application.
+ */
+@Component
+@ConditionalOnProperty(value = "sales.aggregation.enabled", havingValue = "true", matchIfMissing = true)
+public class SalesWindowAggregator {
+
+    public static final String SLIDING = "SLIDING";
+    public static final String TUMBLING = "TUMBLING";
+    public static final String TUMBLING_OPEN = "TUMBLING_OPEN";
+    static final String NO_CATEGORY = "UNCATEGORIZED";
+
+    private final long bucketMillis;
+    private final LongSupplier clock;
+    // Indexed by absolute bucket index (epoch millis / bucketMillis) modulo the longest sliding span
+    private final Bucket[] ring;
+    private final Map<Duration, SlidingWindow> slidingWindows = new LinkedHashMap<>();
+    private final Map<Duration, TumblingWindow> tumblingWindows = new LinkedHashMap<>();
+    // Everything below is guarded by this
+    private long newestBucket = Long.MIN_VALUE;
+
+    @Autowired
+    public SalesWindowAggregator(@Value("${sales.aggregation.bucket:5s}") Duration bucket,
+                                 @Value("${sales.aggregation.sliding-windows:1m,5m,15m,1h}") List<Duration> slidingWindows,
+                                 @Value("${sales.aggregation.tumbling-windows:1m,1h}") List<Duration> tumblingWindows) {
+        this(bucket, slidingWindows, tumblingWindows, System::currentTimeMillis);
+    }
+
+    SalesWindowAggregator(Duration bucket, List<Duration> slidingWindows, List<Duration> tumblingWindows, LongSupplier clock) {
+        if (bucket.toMillis() <= 0) {
+            throw new IllegalArgumentException("sales.aggregation.bucket must be positive: " + bucket);
+        }
+        this.bucketMillis = bucket.toMillis();
+        this.clock = clock;
+        int longestSpan = 1;
+        for (Duration window : slidingWindows) {
+            int span = (int) Math.max(1, (window.toMillis() + bucketMillis - 1) / bucketMillis);
+            this.slidingWindows.put(window, new SlidingWindow(label(window), span));
+            longestSpan = Math.max(longestSpan, span);
+        }
+        for (Duration window : tumblingWindows) {
+            if (window.toMillis() <= 0) {
+                throw new IllegalArgumentException("Tumbling windows must be positive: " + window);
+            }
+            this.tumblingWindows.put(window, new TumblingWindow(label(window), window.toMillis()));
+        }
+        this.ring = new Bucket[longestSpan];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Adds a detected sale to the current bucket and every window.
+     */
+    public void record(StockChangeEventDTO event) {
+        if (event.getProductId() == null || event.getQuantityChanged() <= 0) {
+            return;
+        }
+        String category = event.getProductCategory() != null ? event.getProductCategory() : NO_CATEGORY;
+        long revenueCents = event.getSaleTotal() != null ? FixedPoint.toMinorUnits(event.getSaleTotal()) : 0;
+        long now = clock.getAsLong();
+        synchronized (this) {
+            advance(now);
+            ring[slot(newestBucket)].aggregate.add(category, event.getProductId(), event.getQuantityChanged(), revenueCents);
+            for (SlidingWindow window : slidingWindows.values()) {
+                window.aggregate.add(category, event.getProductId(), event.getQuantityChanged(), revenueCents);
+            }
+            for (TumblingWindow window : tumblingWindows.values()) {
+                window.open.add(category, event.getProductId(), event.getQuantityChanged(), revenueCents);
+            }
+        }
+    }
+
+    /**
+     * Totals of every sliding window, and of the closed and open tumbling windows.
+     */
+    public synchronized List<SalesWindowDTO> getWindowTotals() {
+        advance(clock.getAsLong());
+        List<SalesWindowDTO> totals = new ArrayList<>();
+        slidingWindows.values().forEach(window -> totals.add(window.view().totals(null, null, window.aggregate.total)));
+        tumblingWindows.values().forEach(window -> {
+            totals.add(window.closedView().totals(null, null, window.closed.total));
+            totals.add(window.openView().totals(null, null, window.open.total));
+        });
+        return totals;
+    }
+
+    /**
+     * Sales of one category, or empty if {@code window} is not configured for that window type.
+     */
+    public synchronized Optional<SalesWindowDTO> getCategoryTotals(Duration window, boolean tumbling, String category) {
+        return find(window, tumbling).map(view -> view.totals(category, null, view.aggregate.byCategory.get(category)));
+    }
+
+    public synchronized Optional<SalesWindowDTO> getProductTotals(Duration window, boolean tumbling, Long productId) {
+        return find(window, tumbling).map(view -> view.totals(null, productId, view.aggregate.byProduct.get(productId)));
+    }
+
+    /**
+     * Sales of every category with sales in the window, highest revenue first.
+     */
+    public synchronized Optional<List<SalesWindowDTO>> getCategoryBreakdown(Duration window, boolean tumbling) {
+        return find(window, tumbling).map(view -> view.aggregate.byCategory.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Totals> entry) -> entry.getValue().revenueCents).reversed())
+                .map(entry -> view.totals(entry.getKey(), null, entry.getValue()))
+                .toList());
+    }
+
+    // Caller holds the lock
+    private Optional<View> find(Duration window, boolean tumbling) {
+        advance(clock.getAsLong());
+        if (tumbling) {
+            TumblingWindow found = tumblingWindows.get(window);
+            return Optional.ofNullable(found).map(TumblingWindow::closedView);
+        }
+        SlidingWindow found = slidingWindows.get(window);
+        return Optional.ofNullable(found).map(SlidingWindow::view);
+    }
+
+    /**
+     * Moves the newest bucket to {@code now}: buckets leaving a sliding window are subtracted from it
+     * before their ring slots are reused, and tumbling windows that ended are closed.
+     */
+    private void advance(long now) {
+        long index = Math.floorDiv(now, bucketMillis);
+        if (index > newestBucket) {
+            for (SlidingWindow window : slidingWindows.values()) {
+                window.expireBefore(index - window.span + 1);
+            }
+            long firstNew = Math.max(newestBucket + 1, index - ring.length + 1);
+            for (long i = firstNew; i <= index; i++) {
+                ring[slot(i)].reset(i);
+            }
+            newestBucket = index;
+        }
+        for (TumblingWindow window : tumblingWindows.values()) {
+            window.roll(now);
+        }
+    }
+
+    private int slot(long bucketIndex) {
+        return (int) Math.floorMod(bucketIndex, (long) ring.length);
+    }
+
+    static String label(Duration window) {
+        long millis = window.toMillis();
+        if (millis % 3_600_000 == 0) {
+            return millis / 3_600_000 + "h";
+        }
+        if (millis % 60_000 == 0) {
+            return millis / 60_000 + "m";
+        }
+        if (millis % 1_000 == 0) {
+            return millis / 1_000 + "s";
+        }
+        return millis + "ms";
+    }
+
+    private final class SlidingWindow {
+        final String label;
+        final int span;
+        final Aggregate aggregate = new Aggregate();
+        // Absolute index of the oldest bucket still counted in the aggregate
+        long oldest = Long.MIN_VALUE;
+
+        SlidingWindow(String label, int span) {
+            this.label = label;
+            this.span = span;
+        }
+
+        void expireBefore(long newOldest) {
+            if (newOldest <= oldest) {
+                return;
+            }
+            if (oldest == Long.MIN_VALUE || newOldest - oldest >= span) {
+                // Nothing counted so far is still inside the window
+                aggregate.clear();
+            } else {
+                for (long i = oldest; i < newOldest; i++) {
+                    Bucket bucket = ring[slot(i)];
+                    if (bucket.index == i) {
+                        aggregate.subtract(bucket.aggregate);
+                    }
+                }
+            }
+            oldest = newOldest;
+        }
+
+        View view() {
+            return new View(label, SLIDING, (newestBucket - span + 1) * bucketMillis, (newestBucket + 1) * bucketMillis, aggregate);
+        }
+    }
+
+    private static final class TumblingWindow {
+        final String label;
+        final long length;
+        long openStart = Long.MIN_VALUE;
+        Aggregate open = new Aggregate();
+        Aggregate closed = new Aggregate();
+
+        TumblingWindow(String label, long length) {
+            this.label = label;
+            this.length = length;
+        }
+
+        void roll(long now) {
+            long start = now - Math.floorMod(now, length);
+            if (start <= openStart) {
+                return;
+            }
+            // A window with no sales in between closes empty
+            closed = openStart != Long.MIN_VALUE && start - openStart == length ? open : new Aggregate();
+            open = new Aggregate();
+            openStart = start;
+        }
+
+        View closedView() {
+            return new View(label, TUMBLING, openStart - length, openStart, closed);
+        }
+
+        View openView() {
+            return new View(label, TUMBLING_OPEN, openStart, openStart + length, open);
+        }
+    }
+
+    private record View(String label, String type, long start, long end, Aggregate aggregate) {
+
+        SalesWindowDTO totals(String category, Long productId, Totals totals) {
+            Totals values = totals != null ? totals : Totals.EMPTY;
+            return SalesWindowDTO.builder()
+                    .window(label)
+                    .type(type)
+                    .windowStart(Instant.ofEpochMilli(start))
+                    .windowEnd(Instant.ofEpochMilli(end))
+                    .category(category)
+                    .productId(productId)
+                    .events(values.events)
+                    .unitsSold(values.units)
+                    .revenue(FixedPoint.toBigDecimal(values.revenueCents))
+                    .build();
+        }
+    }
+
+    private static final class Bucket {
+        long index = Long.MIN_VALUE;
+        final Aggregate aggregate = new Aggregate();
+
+        void reset(long index) {
+            this.index = index;
+            aggregate.clear();
+        }
+    }
+
+    private static final class Aggregate {
+        final Totals total = new Totals();
+        final Map<String, Totals> byCategory = new HashMap<>();
+        final Map<Long, Totals> byProduct = new HashMap<>();
+
+        void add(String category, Long productId, long units, long revenueCents) {
+            total.add(1, units, revenueCents);
+            byCategory.computeIfAbsent(category, key -> new Totals()).add(1, units, revenueCents);
+            byProduct.computeIfAbsent(productId, key -> new Totals()).add(1, units, revenueCents);
+        }
+
+        void subtract(Aggregate expired) {
+            total.add(-expired.total.events, -expired.total.units, -expired.total.revenueCents);
+            expired.byCategory.forEach((category, totals) -> subtract(byCategory, category, totals));
+            expired.byProduct.forEach((productId, totals) -> subtract(byProduct, productId, totals));
+        }
+
+        void clear() {
+            total.add(-total.events, -total.units, -total.revenueCents);
+            byCategory.clear();
+            byProduct.clear();
+        }
+
+        // Keys without sales left are dropped, so the maps only hold what the window still contains
+        private static <K> void subtract(Map<K, Totals> totalsByKey, K key, Totals expired) {
+            Totals totals = totalsByKey.get(key);
+            if (totals != null) {
+                totals.add(-expired.events, -expired.units, -expired.revenueCents);
+                if (totals.events <= 0) {
+                    totalsByKey.remove(key);
+                }
+            }
+        }
+    }
+
+    private static final class Totals {
+        static final Totals EMPTY = new Totals();
+
+        long events;
+        long units;
+        long revenueCents;
+
+        void add(long events, long units, long revenueCents) {
+            this.events += events;
+            this.units += units;
+            this.revenueCents += revenueCents;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conflates stock change events per product.
+ * <p>
+ * The first event for a product opens a window of {@code stock.monitoring.coalesce.window} ms; every
+ * further decrement inside that window is merged into it (summed {@code quantityChanged} and
+ * {@code saleTotal}, latest {@code newQuantity} and timestamp). The merged event is released once
+ * its window has elapsed.
+ */
+@Component
+public class StockChangeCoalescer {
+
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong mergedEvents = new AtomicLong();
+
+    private final boolean enabled;
+    private final long windowMs;
+
+    public StockChangeCoalescer(@Value("${stock.monitoring.coalesce.enabled:false}") boolean enabled,
+                                @Value("${stock.monitoring.coalesce.window:5000}") long windowMs) {
+        this.enabled = enabled;
+        this.windowMs = windowMs;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void offer(StockChangeEventDTO event, long nowMillis) {
+        pending.compute(event.getProductId(), (productId, current) -> {
+            if (current == null) {
+                return new Pending(event, nowMillis);
+            }
+            current.merge(event);
+            mergedEvents.incrementAndGet();
+            return current;
+        });
+    }
+
+    /**
+     * Removes and returns the events whose window has elapsed.
+     */
+    public List<StockChangeEventDTO> drainExpired(long nowMillis) {
+        return drain(nowMillis - windowMs);
+    }
+
+    /**
+     * Removes and returns every pending event regardless of its window.
+     */
+    public List<StockChangeEventDTO> drainAll() {
+        return drain(Long.MAX_VALUE);
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public long getMergedEvents() {
+        return mergedEvents.get();
+    }
+
+    private List<StockChangeEventDTO> drain(long openedBefore) {
+        if (pending.isEmpty()) {
+            return List.of();
+        }
+        List<StockChangeEventDTO> released = new ArrayList<>();
+        for (Map.Entry<Long, Pending> entry : pending.entrySet()) {
+            Pending candidate = entry.getValue();
+            // remove(key, value) takes the same bin lock as compute, so no merge can land after it
+            if (candidate.openedAt <= openedBefore && pending.remove(entry.getKey(), candidate)) {
+                released.add(candidate.event);
+            }
+        }
+        return released;
+    }
+
+    private static final class Pending {
+        private final StockChangeEventDTO event;
+        private final long openedAt;
+
+        Pending(StockChangeEventDTO first, long openedAt) {
+            this.event = new StockChangeEventDTO(first.getProductId(), first.getProductName(), first.getProductCategory(),
+                    first.getQuantityChanged(), first.getNewQuantity(), first.getSaleTotal(), first.getChangeTimestamp());
+            this.openedAt = openedAt;
+        }
+
+        void merge(StockChangeEventDTO next) {
+            event.setQuantityChanged(event.getQuantityChanged() + next.getQuantityChanged());
+            event.setNewQuantity(next.getNewQuantity());
+            if (next.getSaleTotal() != null) {
+                BigDecimal total = event.getSaleTotal();
+                event.setSaleTotal(total == null ? next.getSaleTotal() : total.add(next.getSaleTotal()));
+            }
+            event.setChangeTimestamp(next.getChangeTimestamp());
+            event.setProductName(next.getProductName());
+            event.setProductCategory(next.getProductCategory());
+        }
+    }
+}
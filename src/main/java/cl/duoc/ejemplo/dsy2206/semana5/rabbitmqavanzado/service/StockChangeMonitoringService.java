@@ -2,41 +2,217 @@ package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
 
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeNotificationService;
 
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.InventoryUpdateDTO;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
-import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductShardSlice;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockScanWatermarkStore.Watermark;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockSnapshotCheckpointStore.Checkpoint;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.BoundedTagCounter;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.LongIntSnapshotMap;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.LongLongSnapshotMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @ConditionalOnProperty(value = "stock.monitoring.enabled", havingValue = "true", matchIfMissing = true)
 public class StockChangeMonitoringService {
     private static final Logger logger = LoggerFactory.getLogger(StockChangeMonitoringService.class);
+    private static final int PRODUCT_LOCK_STRIPES = 64;
 
     private final ProductRepository productRepository;
     private final StockChangeNotificationService stockChangeNotificationService;
-    private final Map<Long, Integer> lastKnownQuantities = new ConcurrentHashMap<>();
+    private final StockScanWatermarkStore watermarkStore;
+    private final StockSnapshotCheckpointStore checkpointStore;
+    private final ProductCache productCache;
+    // Absent when sales.aggregation.enabled is off
+    private final SalesWindowAggregator salesAggregator;
+    private final LongIntSnapshotMap lastKnownQuantities;
+    // Epoch millis of the last pushed inventory update per product, until the database catches up with it
+    private final LongLongSnapshotMap lastPushedAt;
+    // Make the push check and the snapshot write of one product atomic between polls and pushed updates
+    private final ReentrantLock[] productLocks = new ReentrantLock[PRODUCT_LOCK_STRIPES];
+    private final TransactionTemplate partitionTransaction;
+    private final int partitions;
+    // Fixed-rate runs overlap on a virtual-thread scheduler when a poll outlasts the interval
+    private final ReentrantLock pollLock = new ReentrantLock();
+    // Only created when the full scan is partitioned
+    private final ExecutorService scanExecutor;
+    // Only present when several instances share the catalog
+    private final StockShardCoordinator shardCoordinator;
+
+    // Recorded once per poll or per emitted event, never per scanned row
+    private final Timer fullPollTimer;
+    private final Timer partitionedPollTimer;
+    private final Timer deltaPollTimer;
+    private final Counter fullRowsScanned;
+    private final Counter partitionedRowsScanned;
+    private final Counter deltaRowsScanned;
+    private final Counter skippedPolls;
+    private final Counter failedPolls;
+    private final DistributionSummary eventsPerPoll;
+    private final BoundedTagCounter polledEvents;
+    private final BoundedTagCounter pushedEvents;
 
     @Value("${stock.monitoring.poll-interval:30000}")
     private long pollIntervalMs;
 
-    private LocalDateTime lastPollTime;
+    /**
+     * full: reads every active product on each poll.
+     * delta: reads only rows whose LAST_PRICE_UPDATE moved past the persisted watermark.
+     */
+    @Value("${stock.monitoring.scan-mode:full}")
+    private String scanMode;
+
+    // JDBC rows fetched per round-trip by the streaming full scan
+    @Value("${stock.monitoring.fetch-size:500}")
+    private int fetchSize;
+
+    @Value("${stock.monitoring.delta.page-size:1000}")
+    private int deltaPageSize;
+
+    // Re-reads this much time behind the watermark to catch rows whose writer committed late
+    @Value("${stock.monitoring.delta.overlap-ms:5000}")
+    private long deltaOverlapMs;
+
+    // After this long (ms) without the row catching up, the database wins over a pushed quantity
+    @Value("${inventory.push.reconcile-grace:60000}")
+    private long pushReconcileGraceMs;
+
+    @Value("${stock.monitoring.checkpoint.enabled:true}")
+    private boolean checkpointEnabled;
+
+    @Value("${stock.monitoring.checkpoint.interval:60000}")
+    private long checkpointIntervalMs;
 
-    public StockChangeMonitoringService(ProductRepository productRepository, StockChangeNotificationService stockChangeNotificationService) {
+    private long lastCheckpointMillis = System.currentTimeMillis();
+    private int detectedThisPoll;
+    // Products owned by this instance during the current poll; null scans the whole catalog
+    private ProductShardSlice slice;
+    private long seenOwnershipVersion;
+
+    public StockChangeMonitoringService(ProductRepository productRepository,
+                                        StockChangeNotificationService stockChangeNotificationService,
+                                        StockScanWatermarkStore watermarkStore,
+                                        StockSnapshotCheckpointStore checkpointStore,
+                                        ProductCache productCache,
+                                        MeterRegistry meterRegistry,
+                                        PlatformTransactionManager transactionManager,
+                                        ObjectProvider<StockShardCoordinator> shardCoordinator,
+                                        ObjectProvider<SalesWindowAggregator> salesAggregator,
+                                        @Value("${stock.monitoring.expected-products:100000}") int expectedProducts,
+                                        @Value("${stock.monitoring.partitions:1}") int partitions,
+                                        @Value("${stock.monitoring.scan-threads:0}") int scanThreads,
+                                        @Value("${stock.monitoring.metrics.max-categories:50}") int maxCategoryTags) {
         this.productRepository = productRepository;
         this.stockChangeNotificationService = stockChangeNotificationService;
-        this.lastPollTime = LocalDateTime.now().minusMinutes(5);
+        this.watermarkStore = watermarkStore;
+        this.checkpointStore = checkpointStore;
+        this.productCache = productCache;
+        this.lastKnownQuantities = new LongIntSnapshotMap(expectedProducts);
+        this.lastPushedAt = new LongLongSnapshotMap();
+        for (int i = 0; i < productLocks.length; i++) {
+            productLocks[i] = new ReentrantLock();
+        }
+        this.shardCoordinator = shardCoordinator.getIfAvailable();
+        if (this.shardCoordinator != null) {
+            this.shardCoordinator.attachStockSnapshot(lastKnownQuantities);
+        }
+        this.salesAggregator = salesAggregator.getIfAvailable();
+        this.partitionTransaction = new TransactionTemplate(transactionManager);
+        this.partitionTransaction.setReadOnly(true);
+        this.partitions = Math.max(1, partitions);
+        if (this.partitions > 1) {
+            int threads = scanThreads > 0 ? scanThreads : Math.min(this.partitions, Runtime.getRuntime().availableProcessors());
+            AtomicInteger threadCount = new AtomicInteger();
+            this.scanExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "stock-scan-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.scanExecutor = null;
+        }
+        this.fullPollTimer = pollTimer(meterRegistry, "full");
+        this.partitionedPollTimer = pollTimer(meterRegistry, "partitioned");
+        this.deltaPollTimer = pollTimer(meterRegistry, "delta");
+        this.fullRowsScanned = rowsScanned(meterRegistry, "full");
+        this.partitionedRowsScanned = rowsScanned(meterRegistry, "partitioned");
+        this.deltaRowsScanned = rowsScanned(meterRegistry, "delta");
+        this.skippedPolls = Counter.builder("stock.monitoring.poll.skipped")
+                .description("Polls skipped because the previous one was still running")
+                .register(meterRegistry);
+        this.failedPolls = Counter.builder("stock.monitoring.poll.failures").register(meterRegistry);
+        this.eventsPerPoll = DistributionSummary.builder("stock.monitoring.poll.events")
+                .description("Stock decreases detected per poll")
+                .register(meterRegistry);
+        this.polledEvents = new BoundedTagCounter(meterRegistry, "stock.monitoring.events", Tags.of("source", "poll"),
+                "category", maxCategoryTags);
+        this.pushedEvents = new BoundedTagCounter(meterRegistry, "stock.monitoring.events", Tags.of("source", "push"),
+                "category", maxCategoryTags);
+        Gauge.builder("stock.monitoring.snapshot.size", lastKnownQuantities, LongIntSnapshotMap::size)
+                .description("Products in the stock snapshot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Warm start: with a restored snapshot the first poll already compares against the quantities
+     * seen before the restart, so sales made during the downtime are emitted.
+     */
+    @PostConstruct
+    void restoreCheckpoint() {
+        if (!checkpointEnabled) {
+            return;
+        }
+        Checkpoint checkpoint = checkpointStore.restore(lastKnownQuantities);
+        if (checkpoint != null) {
+            // The scan position must match the restored quantities, not a newer standalone watermark
+            watermarkStore.reset();
+            watermarkStore.advance(checkpoint.watermark());
+            logger.info("Restored stock snapshot of {} products from checkpoint taken at {}", checkpoint.entries(), checkpoint.createdAt());
+        }
+    }
+
+    @PreDestroy
+    void checkpointOnShutdown() {
+        if (scanExecutor != null) {
+            scanExecutor.shutdownNow();
+        }
+        if (checkpointEnabled && !lastKnownQuantities.isEmpty()) {
+            writeCheckpoint();
+        }
     }
 
     @Scheduled(fixedRateString = "${stock.monitoring.poll-interval:30000}")
@@ -46,32 +222,390 @@ public class StockChangeMonitoringService {
             logger.debug("Stock monitoring is disabled, skipping poll");
             return;
         }
+        if (!pollLock.tryLock()) {
+            logger.debug("Previous stock poll still running, skipping");
+            skippedPolls.increment();
+            return;
+        }
+        long startNanos = System.nanoTime();
+        Timer pollTimer = null;
         try {
             logger.debug("Starting stock change monitoring poll");
-            List<Product> products = productRepository.findActiveProducts();
-            for (Product product : products) {
-                int currentQuantity = product.getQuantity();
-                Long productId = product.getId();
-                Integer lastQuantity = lastKnownQuantities.get(productId);
-                if (lastQuantity != null && currentQuantity < lastQuantity) {
-                    int quantityChanged = lastQuantity - currentQuantity;
-                    BigDecimal saleTotal = product.getPrice() != null ? product.getPrice().multiply(BigDecimal.valueOf(quantityChanged)) : BigDecimal.ZERO;
-                    StockChangeEventDTO event = StockChangeEventDTO.builder()
-                        .productId(productId)
-                        .productName(product.getName())
-                        .productCategory(product.getCategory())
-                        .quantityChanged(quantityChanged)
-                        .newQuantity(currentQuantity)
-                        .saleTotal(saleTotal)
-                        .changeTimestamp(LocalDateTime.now())
-                        .build();
-                    stockChangeNotificationService.notifyStockChange(event);
-                    logger.info("Stock decreased for product ID {}: -{} (new quantity: {})", productId, quantityChanged, currentQuantity);
+            detectedThisPoll = 0;
+            boolean ownershipChanged = false;
+            if (shardCoordinator != null) {
+                long ownershipVersion = shardCoordinator.getOwnershipVersion();
+                slice = shardCoordinator.currentSlice();
+                if (slice == null) {
+                    logger.debug("Node {} owns no live stock shard leases, skipping poll", shardCoordinator.getNodeId());
+                    return;
+                }
+                if (ownershipVersion != seenOwnershipVersion) {
+                    seenOwnershipVersion = ownershipVersion;
+                    dropForeignProducts();
+                    int handedOver = shardCoordinator.takeHandedOverStock(slice);
+                    if (handedOver > 0) {
+                        logger.info("Took over the last known stock of {} products from their previous owner", handedOver);
+                    }
+                    ownershipChanged = true;
                 }
-                lastKnownQuantities.put(productId, currentQuantity);
+            }
+            // The delta scan needs a baseline for every product, so it seeds with one full pass
+            // (also after this node took over shards)
+            if ("delta".equalsIgnoreCase(scanMode) && !lastKnownQuantities.isEmpty() && !ownershipChanged) {
+                pollTimer = deltaPollTimer;
+                scanChangedProducts();
+            } else {
+                pollTimer = partitions > 1 ? partitionedPollTimer : fullPollTimer;
+                scanAllProducts();
+            }
+            stockChangeNotificationService.flush();
+            eventsPerPoll.record(detectedThisPoll);
+            if (detectedThisPoll > 0) {
+                logger.info("Stock monitoring poll detected {} stock decreases", detectedThisPoll);
+            }
+            if (checkpointEnabled && System.currentTimeMillis() - lastCheckpointMillis >= checkpointIntervalMs) {
+                writeCheckpoint();
             }
         } catch (Exception e) {
+            failedPolls.increment();
             logger.error("Error during stock monitoring poll: {}", e.getMessage(), e);
+        } finally {
+            // Polls that own no shards are not timed
+            if (pollTimer != null) {
+                pollTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+            pollLock.unlock();
+        }
+    }
+
+    private void scanAllProducts() {
+        ScanResult result;
+        if (partitions > 1) {
+            result = scanPartitions();
+            if (result == null) {
+                return;
+            }
+        } else {
+            result = new ScanResult();
+            // Rows come off a forward-only cursor as unmanaged projections, so heap use does not grow with the catalog
+            try (Stream<ProductoDTO> rows = productRepository.streamActiveProductStock(slice, fetchSize)) {
+                scan(rows, result, this::publish);
+            }
+        }
+        (partitions > 1 ? partitionedRowsScanned : fullRowsScanned).increment(result.scanned);
+        logger.debug("Full stock scan read {} active products", result.scanned);
+        if (result.maxTimestamp != null) {
+            watermarkStore.advance(new Watermark(result.maxTimestamp, result.maxId));
+        }
+        watermarkStore.persist();
+    }
+
+    /**
+     * Splits the active ID range into {@code stock.monitoring.partitions} slices that are read and diffed
+     * in parallel, each on its own read-only transaction and connection. Detected events are collected per
+     * partition and published afterwards from this thread, so publishing stays a single sequential stage.
+     *
+     * @return the merged result, or {@code null} if a partition failed (the watermark then stays put)
+     */
+    private ScanResult scanPartitions() {
+        long[] range = productRepository.findActiveProductIdRange();
+        if (range == null) {
+            return new ScanResult();
+        }
+        long span = range[1] - range[0] + 1;
+        long step = Math.max(1L, (span + partitions - 1) / partitions);
+        ProductShardSlice ownedSlice = slice;
+        List<CompletableFuture<ScanResult>> futures = new ArrayList<>(partitions);
+        for (long fromId = range[0]; fromId <= range[1]; fromId += step) {
+            long from = fromId;
+            long to = Math.min(range[1] + 1, fromId + step);
+            futures.add(CompletableFuture.supplyAsync(() -> partitionTransaction.execute(status -> {
+                ScanResult partition = new ScanResult();
+                try (Stream<ProductoDTO> rows = productRepository.streamActiveProductStock(from, to, ownedSlice, fetchSize)) {
+                    scan(rows, partition, partition.events::add);
+                }
+                return partition;
+            }), scanExecutor));
+        }
+        ScanResult merged = new ScanResult();
+        boolean failed = false;
+        for (CompletableFuture<ScanResult> future : futures) {
+            try {
+                ScanResult partition = future.join();
+                // Publish even when a sibling failed: these decrements are already in the snapshot
+                partition.events.forEach(this::publish);
+                merged.merge(partition);
+            } catch (Exception e) {
+                failed = true;
+                logger.error("Stock scan partition failed: {}", e.getMessage(), e);
+            }
+        }
+        logger.debug("Partitioned stock scan read {} products in {} partitions", merged.scanned, futures.size());
+        return failed ? null : merged;
+    }
+
+    private void scan(Stream<ProductoDTO> rows, ScanResult result, Consumer<StockChangeEventDTO> sink) {
+        Iterator<ProductoDTO> iterator = rows.iterator();
+        while (iterator.hasNext()) {
+            ProductoDTO product = iterator.next();
+            StockChangeEventDTO event = detectStockChange(product);
+            if (event != null) {
+                sink.accept(event);
+            }
+            result.observe(product);
+        }
+    }
+
+    private void scanChangedProducts() {
+        Watermark watermark = watermarkStore.get();
+        if (watermark == null) {
+            scanAllProducts();
+            return;
+        }
+        LocalDateTime fromTimestamp = watermark.timestamp().minusNanos(deltaOverlapMs * 1_000_000L);
+        long fromId = deltaOverlapMs > 0 ? 0L : watermark.productId();
+        int scanned = 0;
+        List<ProductoDTO> products;
+        do {
+            products = productRepository.findActiveProductsChangedAfter(fromTimestamp, fromId, slice, deltaPageSize);
+            for (ProductoDTO product : products) {
+                StockChangeEventDTO event = detectStockChange(product);
+                if (event != null) {
+                    publish(event);
+                }
+            }
+            if (!products.isEmpty()) {
+                ProductoDTO last = products.get(products.size() - 1);
+                fromTimestamp = last.getLastPriceUpdate();
+                fromId = last.getId();
+                watermarkStore.advance(new Watermark(fromTimestamp, fromId));
+                scanned += products.size();
+            }
+        } while (products.size() == deltaPageSize);
+        watermarkStore.persist();
+        deltaRowsScanned.increment(scanned);
+        logger.debug("Delta stock scan read {} changed products", scanned);
+    }
+
+    /**
+     * Forgets products of shards this node no longer owns, so a later takeover diffs against the quantities
+     * handed over by their owner in between (or re-baselines them) instead of against stale ones.
+     */
+    private void dropForeignProducts() {
+        List<Long> foreign = new ArrayList<>();
+        lastKnownQuantities.forEach((productId, quantity) -> {
+            if (!slice.contains(productId)) {
+                foreign.add(productId);
+            }
+        });
+        foreign.forEach(productId -> {
+            lastKnownQuantities.remove(productId);
+            lastPushedAt.remove(productId);
+        });
+        if (!foreign.isEmpty()) {
+            logger.info("Dropped {} products of released stock shards from the snapshot", foreign.size());
+        }
+    }
+
+    /**
+     * Applies a stock movement pushed by the inventory service and emits the decrease right away instead
+     * of waiting for the next poll. The pushed quantity wins over database rows until a row agrees with it
+     * or the reconcile grace runs out (see {@link #supersededByPush(ProductoDTO)}).
+     * <p>
+     * Updates without an absolute {@code newQuantity} need a baseline in the snapshot; without one they
+     * are left to the next poll. With sharding, products of shards owned by another node are left to
+     * that node's poll as well.
+     *
+     * @return the emitted event, or {@code null} if nothing was published
+     */
+    public StockChangeEventDTO applyInventoryUpdate(InventoryUpdateDTO update) {
+        if (!stockChangeNotificationService.isNotificationsEnabled()) {
+            return null;
+        }
+        long productId = update.getProductId();
+        if (shardCoordinator != null) {
+            ProductShardSlice owned = shardCoordinator.currentSlice();
+            if (owned == null || !owned.contains(productId)) {
+                logger.debug("Product ID {} is not in a stock shard owned by this node, leaving it to reconciliation", productId);
+                return null;
+            }
+        }
+        int lastQuantity;
+        int newQuantity;
+        ReentrantLock productLock = productLock(productId);
+        productLock.lock();
+        try {
+            lastQuantity = lastKnownQuantities.get(productId);
+            if (update.getNewQuantity() != null) {
+                newQuantity = update.getNewQuantity();
+            } else if (lastQuantity != LongIntSnapshotMap.NO_VALUE) {
+                newQuantity = lastQuantity + update.getQuantityDelta();
+            } else {
+                logger.debug("No stock baseline for product ID {}, leaving delta update to reconciliation", productId);
+                return null;
+            }
+            LocalDateTime occurredAt = update.getOccurredAt() != null ? update.getOccurredAt() : LocalDateTime.now();
+            lastPushedAt.update(productId, toMillis(occurredAt));
+            lastQuantity = lastKnownQuantities.update(productId, newQuantity);
+        } finally {
+            productLock.unlock();
+        }
+        if (lastQuantity != newQuantity) {
+            productCache.invalidate(productId, update.getProductCategory());
+        }
+        int quantityChanged;
+        if (lastQuantity != LongIntSnapshotMap.NO_VALUE) {
+            quantityChanged = lastQuantity - newQuantity;
+        } else {
+            quantityChanged = update.getQuantityDelta() != null ? -update.getQuantityDelta() : 0;
+        }
+        if (quantityChanged <= 0) {
+            return null;
+        }
+        StockChangeEventDTO event = buildEvent(productId, update.getProductName(), update.getProductCategory(),
+                quantityChanged, newQuantity, update.getUnitPrice());
+        stockChangeNotificationService.notifyStockChange(event);
+        recordSale(event);
+        pushedEvents.increment(event.getProductCategory());
+        logger.debug("Pushed stock decrease for product ID {}: -{} (new quantity: {})", productId, quantityChanged, newQuantity);
+        return event;
+    }
+
+    private StockChangeEventDTO detectStockChange(ProductoDTO product) {
+        int currentQuantity = product.getQuantity();
+        Long productId = product.getId();
+        int lastQuantity;
+        // A push between the check and the write would otherwise be overwritten by this older row
+        ReentrantLock productLock = productLock(productId);
+        productLock.lock();
+        try {
+            if (supersededByPush(product)) {
+                return null;
+            }
+            // Writes only when the quantity actually moved
+            lastQuantity = lastKnownQuantities.update(productId, currentQuantity);
+        } finally {
+            productLock.unlock();
+        }
+        if (lastQuantity != LongIntSnapshotMap.NO_VALUE && lastQuantity != currentQuantity) {
+            productCache.invalidate(productId, product.getCategory());
+        }
+        if (lastQuantity != LongIntSnapshotMap.NO_VALUE && currentQuantity < lastQuantity) {
+            int quantityChanged = lastQuantity - currentQuantity;
+            logger.debug("Stock decreased for product ID {}: -{} (new quantity: {})", productId, quantityChanged, currentQuantity);
+            return buildEvent(productId, product.getName(), product.getCategory(), quantityChanged, currentQuantity, product.getPrice());
+        }
+        return null;
+    }
+
+    /**
+     * True while the row disagrees with the last pushed quantity of its product: diffing it would move
+     * the snapshot back and re-emit the pushed sale once the row catches up. The push mark is dropped as
+     * soon as a row agrees with the snapshot or the grace period ran out, so a sale written only to the
+     * database right after a push is emitted late rather than never. Rows are not judged by
+     * LAST_PRICE_UPDATE: inventory writers need not bump it, and a price-only update bumps it while the
+     * row still carries the quantity from before the push. Called under the product's lock.
+     */
+    private boolean supersededByPush(ProductoDTO product) {
+        long productId = product.getId();
+        long pushedAt = lastPushedAt.get(productId);
+        if (pushedAt == LongLongSnapshotMap.NO_VALUE) {
+            return false;
+        }
+        if (lastKnownQuantities.get(productId) == product.getQuantity()
+                || System.currentTimeMillis() - pushedAt > pushReconcileGraceMs) {
+            lastPushedAt.remove(productId);
+            return false;
+        }
+        return true;
+    }
+
+    private ReentrantLock productLock(long productId) {
+        return productLocks[(int) (productId & (PRODUCT_LOCK_STRIPES - 1))];
+    }
+
+    private static StockChangeEventDTO buildEvent(Long productId, String name, String category,
+                                                  int quantityChanged, int newQuantity, BigDecimal price) {
+        BigDecimal saleTotal = price != null ? price.multiply(BigDecimal.valueOf(quantityChanged)) : BigDecimal.ZERO;
+        return StockChangeEventDTO.builder()
+            .productId(productId)
+            .productName(name)
+            .productCategory(category)
+            .quantityChanged(quantityChanged)
+            .newQuantity(newQuantity)
+            .saleTotal(saleTotal)
+            .changeTimestamp(LocalDateTime.now())
+            .build();
+    }
+
+    private static long toMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void publish(StockChangeEventDTO event) {
+        stockChangeNotificationService.notifyStockChange(event);
+        recordSale(event);
+        polledEvents.increment(event.getProductCategory());
+        detectedThisPoll++;
+    }
+
+    private void recordSale(StockChangeEventDTO event) {
+        if (salesAggregator != null) {
+            salesAggregator.record(event);
+        }
+    }
+
+    private static Timer pollTimer(MeterRegistry meterRegistry, String scan) {
+        return Timer.builder("stock.monitoring.poll")
+                .description("Duration of a stock poll, publishing included")
+                .tag("scan", scan)
+                .register(meterRegistry);
+    }
+
+    private static Counter rowsScanned(MeterRegistry meterRegistry, String scan) {
+        return Counter.builder("stock.monitoring.rows")
+                .description("Product rows read by stock polls")
+                .tag("scan", scan)
+                .register(meterRegistry);
+    }
+
+    private void writeCheckpoint() {
+        try {
+            int entries = checkpointStore.write(lastKnownQuantities, watermarkStore.get());
+            lastCheckpointMillis = System.currentTimeMillis();
+            logger.debug("Checkpointed stock snapshot of {} products", entries);
+        } catch (Exception e) {
+            logger.warn("Could not checkpoint stock snapshot: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Products read by one scan (or one partition), the highest (lastPriceUpdate, id) seen for the
+     * watermark and, for partitions, the events waiting for the publish stage.
+     */
+    private static final class ScanResult {
+        private final List<StockChangeEventDTO> events = new ArrayList<>();
+        private LocalDateTime maxTimestamp;
+        private long maxId;
+        private int scanned;
+
+        void observe(ProductoDTO product) {
+            advanceMax(product.getLastPriceUpdate(), product.getId());
+            scanned++;
+        }
+
+        void merge(ScanResult other) {
+            advanceMax(other.maxTimestamp, other.maxId);
+            scanned += other.scanned;
+        }
+
+        private void advanceMax(LocalDateTime updated, long id) {
+            if (updated != null && (maxTimestamp == null || updated.isAfter(maxTimestamp)
+                    || (updated.isEqual(maxTimestamp) && id > maxId))) {
+                maxTimestamp = updated;
+                maxId = id;
+            }
         }
     }
 }
@@ -4,6 +4,8 @@ import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
 
 public interface StockChangeNotificationService {
     void notifyStockChange(StockChangeEventDTO stockChangeEvent);
+    /** Publishes any events still buffered by a batching publisher. */
+    void flush();
     void setNotificationsEnabled(boolean enabled);
     boolean isNotificationsEnabled();
 }
@@ -0,0 +1,93 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+
+/**
+ * Persists the high-watermark of the delta stock scan as a (LAST_PRICE_UPDATE, ID) keyset position
+ * so the next poll only reads rows that changed after it.
+ */
+@Component
+public class StockScanWatermarkStore {
+    private static final Logger logger = LoggerFactory.getLogger(StockScanWatermarkStore.class);
+
+    private static final String SEPARATOR = "|";
+
+    private final Path watermarkFile;
+    private volatile Watermark current;
+
+    public StockScanWatermarkStore(@Value("${stock.monitoring.delta.watermark-file:data/stock-scan.watermark}") String watermarkFile) {
+        this.watermarkFile = Paths.get(watermarkFile);
+        this.current = load();
+    }
+
+    public Watermark get() {
+        return current;
+    }
+
+    /**
+     * Advances the in-memory watermark. Positions behind the current one are ignored.
+     */
+    public void advance(Watermark candidate) {
+        if (candidate != null && (current == null || candidate.isAfter(current))) {
+            current = candidate;
+        }
+    }
+
+    public void reset() {
+        current = null;
+    }
+
+    public void persist() {
+        Watermark watermark = current;
+        if (watermark == null) {
+            return;
+        }
+        try {
+            Path parent = watermarkFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = watermarkFile.resolveSibling(watermarkFile.getFileName() + ".tmp");
+            Files.writeString(tmp, watermark.timestamp() + SEPARATOR + watermark.productId(), StandardCharsets.UTF_8);
+            Files.move(tmp, watermarkFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not persist stock scan watermark to {}: {}", watermarkFile, e.getMessage());
+        }
+    }
+
+    private Watermark load() {
+        if (!Files.isRegularFile(watermarkFile)) {
+            return null;
+        }
+        try {
+            String content = Files.readString(watermarkFile, StandardCharsets.UTF_8).trim();
+            int separator = content.indexOf(SEPARATOR);
+            Watermark watermark = new Watermark(LocalDateTime.parse(content.substring(0, separator)),
+                    Long.parseLong(content.substring(separator + 1)));
+            logger.info("Loaded stock scan watermark {} from {}", watermark, watermarkFile);
+            return watermark;
+        } catch (Exception e) {
+            logger.warn("Ignoring unreadable stock scan watermark file {}: {}", watermarkFile, e.getMessage());
+            return null;
+        }
+    }
+
+    public record Watermark(LocalDateTime timestamp, long productId) {
+
+        public boolean isAfter(Watermark other) {
+            int cmp = timestamp.compareTo(other.timestamp);
+            return cmp > 0 || (cmp == 0 && productId > other.productId);
+        }
+    }
+}
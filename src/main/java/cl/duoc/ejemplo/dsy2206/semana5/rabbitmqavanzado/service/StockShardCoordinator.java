@@ -0,0 +1,272 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.StockMonitorNode;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.StockShardHandoff;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.StockShardLease;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductShardSlice;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.StockMonitorNodeRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.StockShardHandoffRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.StockShardLeaseRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.LongIntSnapshotMap;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Splits the catalog between stock monitor instances through leases stored in the database.
+ * <p>
+ * Products are hashed into {@code stock.monitoring.sharding.shards} shards ({@code MOD(ID, shards)}),
+ * one STOCK_SHARD_LEASE row each. On every heartbeat an instance records itself in STOCK_MONITOR_NODE,
+ * renews its leases and moves towards its fair share ({@code ceil(shards / live instances)}): it releases
+ * surplus shards when an instance joined and claims free or expired ones when an instance left or died.
+ * Claims are conditional UPDATEs, so a shard never has two owners, and a crashed instance's shards are
+ * taken over once its leases expire after {@code lease-ttl}. An instance whose heartbeat fails or stalls
+ * stops using its shards when its own copy of the lease expiry passes, which is never later than the
+ * expiry other instances see. All instances must use the same shard count and reasonably synchronised
+ * clocks.
+ * <p>
+ * A shard released on purpose (rebalance or shutdown) is handed over: the release transaction stores the
+ * last quantities this node saw for the shard's products in STOCK_SHARD_HANDOFF, and the claiming node
+ * diffs its first scan against them, so sales made between the two scans are emitted rather than
+ * absorbed into a new baseline. Sales the old owner saw after writing the handoff may be emitted twice.
+ * Shards taken over from a crashed node, whose leases simply expired, still start from a fresh baseline.
+ */
+@Component
+@ConditionalOnProperty(value = "stock.monitoring.sharding.enabled", havingValue = "true")
+public class StockShardCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(StockShardCoordinator.class);
+
+    private final StockShardLeaseRepository leaseRepository;
+    private final StockMonitorNodeRepository nodeRepository;
+    private final StockShardHandoffRepository handoffRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ReentrantLock rebalanceLock = new ReentrantLock();
+    private final int shardCount;
+    private final long leaseTtlMs;
+    private final String nodeId;
+
+    private volatile Ownership ownership = new Ownership(Set.of(), 0L);
+    // Bumped whenever the owned shards change so the monitor can re-baseline
+    private volatile long ownershipVersion;
+    private boolean leaseRowsCreated;
+    // The stock monitor's snapshot; absent when this instance does not monitor stock, and then no handoff is done
+    private volatile LongIntSnapshotMap stockSnapshot;
+    // Handed-over quantities of claimed shards, until the monitor takes them on its next poll
+    private final ConcurrentHashMap<Integer, List<StockShardHandoff>> handedOver = new ConcurrentHashMap<>();
+
+    public StockShardCoordinator(StockShardLeaseRepository leaseRepository,
+                                 StockMonitorNodeRepository nodeRepository,
+                                 StockShardHandoffRepository handoffRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${stock.monitoring.sharding.shards:16}") int shardCount,
+                                 @Value("${stock.monitoring.sharding.lease-ttl:15000}") long leaseTtlMs,
+                                 @Value("${stock.monitoring.sharding.node-id:}") String nodeId) {
+        this.leaseRepository = leaseRepository;
+        this.nodeRepository = nodeRepository;
+        this.handoffRepository = handoffRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shardCount = shardCount;
+        this.leaseTtlMs = leaseTtlMs;
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+    }
+
+    /**
+     * The products this instance currently owns, or {@code null} when it owns no shard or its leases
+     * were not renewed in time.
+     */
+    public ProductShardSlice currentSlice() {
+        Ownership current = ownership;
+        if (current.shards().isEmpty() || System.nanoTime() - current.leaseDeadlineNanos() >= 0) {
+            return null;
+        }
+        return new ProductShardSlice(shardCount, current.shards());
+    }
+
+    /**
+     * Registers the snapshot whose quantities are handed over with released shards.
+     */
+    public void attachStockSnapshot(LongIntSnapshotMap snapshot) {
+        this.stockSnapshot = snapshot;
+    }
+
+    /**
+     * Copies the quantities handed over with the shards of {@code slice} into the attached snapshot.
+     * Called by the monitor after an ownership change, before it scans the new slice.
+     *
+     * @return number of products taken over
+     */
+    public int takeHandedOverStock(ProductShardSlice slice) {
+        LongIntSnapshotMap snapshot = stockSnapshot;
+        int products = 0;
+        for (Integer shardId : slice.shards()) {
+            List<StockShardHandoff> rows = handedOver.remove(shardId);
+            if (rows != null && snapshot != null) {
+                rows.forEach(row -> snapshot.update(row.getProductId(), row.getQuantity()));
+                products += rows.size();
+            }
+        }
+        return products;
+    }
+
+    public long getOwnershipVersion() {
+        return ownershipVersion;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Scheduled(fixedDelayString = "${stock.monitoring.sharding.heartbeat-interval:5000}")
+    public void heartbeat() {
+        try {
+            rebalance();
+        } catch (Exception e) {
+            logger.error("Stock shard rebalance failed for node {}: {}", nodeId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * One heartbeat: records this node, renews its leases and claims or releases shards towards its fair share.
+     * Locked so a manual call never overlaps the scheduled heartbeat (a lock rather than synchronized:
+     * the body does JDBC I/O, which would pin a virtual thread inside a monitor).
+     */
+    public void rebalance() {
+        rebalanceLock.lock();
+        try {
+            doRebalance();
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    private void doRebalance() {
+        if (!leaseRowsCreated) {
+            createLeaseRows();
+            leaseRowsCreated = true;
+        }
+        // Taken before the leases are written, so the local deadline never outlives the stored expiry
+        long leaseDeadlineNanos = System.nanoTime() + leaseTtlMs * 1_000_000L;
+        List<StockShardHandoff> received = new ArrayList<>();
+        Set<Integer> owned = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime expiresAt = now.plusNanos(leaseTtlMs * 1_000_000L);
+            LocalDateTime liveAfter = now.minusNanos(leaseTtlMs * 1_000_000L);
+            nodeRepository.save(new StockMonitorNode(nodeId, now));
+            nodeRepository.deleteStaleNodes(liveAfter);
+            long liveNodes = Math.max(1, nodeRepository.countByHeartbeatAtAfter(liveAfter));
+            int fairShare = (int) ((shardCount + liveNodes - 1) / liveNodes);
+
+            leaseRepository.renew(nodeId, expiresAt);
+            List<Integer> current = new ArrayList<>(leaseRepository.findShardIdsOwnedBy(nodeId));
+            if (current.size() > fairShare) {
+                List<Integer> surplus = new ArrayList<>(current.subList(fairShare, current.size()));
+                current.removeAll(surplus);
+                handOff(surplus);
+                surplus.forEach(shardId -> leaseRepository.release(shardId, nodeId));
+            }
+            if (current.size() < fairShare) {
+                List<Integer> claimed = new ArrayList<>();
+                for (Integer shardId : leaseRepository.findClaimableShardIds(shardCount, now)) {
+                    if (current.size() >= fairShare) {
+                        break;
+                    }
+                    if (leaseRepository.claim(shardId, nodeId, expiresAt, now) == 1) {
+                        current.add(shardId);
+                        claimed.add(shardId);
+                    }
+                }
+                if (!claimed.isEmpty() && stockSnapshot != null) {
+                    received.addAll(handoffRepository.findByShardIds(claimed));
+                    handoffRepository.deleteByShardIds(claimed);
+                }
+            }
+            return new TreeSet<>(current);
+        });
+        // Published before the ownership, so the monitor finds them when it sees the new version
+        handedOver.keySet().retainAll(owned);
+        received.forEach(row -> handedOver.computeIfAbsent(row.getShardId(), shardId -> new ArrayList<>()).add(row));
+        Set<Integer> previous = ownership.shards();
+        ownership = new Ownership(Set.copyOf(owned), leaseDeadlineNanos);
+        if (!owned.equals(previous)) {
+            logger.info("Node {} now owns {} of {} stock shards: {}", nodeId, owned.size(), shardCount, owned);
+            ownershipVersion++;
+        }
+    }
+
+    @PreDestroy
+    public void releaseLeases() {
+        ownership = new Ownership(Set.of(), 0L);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                handOff(leaseRepository.findShardIdsOwnedBy(nodeId));
+                leaseRepository.releaseAll(nodeId);
+                nodeRepository.deleteById(nodeId);
+            });
+            logger.info("Node {} released its stock shards", nodeId);
+        } catch (Exception e) {
+            logger.warn("Could not release stock shards of node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    // Replaces any earlier handoff of these shards with the quantities this node last saw
+    private void handOff(Collection<Integer> shardIds) {
+        LongIntSnapshotMap snapshot = stockSnapshot;
+        if (snapshot == null || shardIds.isEmpty()) {
+            return;
+        }
+        ProductShardSlice released = new ProductShardSlice(shardCount, Set.copyOf(shardIds));
+        List<StockShardHandoff> rows = new ArrayList<>();
+        snapshot.forEach((productId, quantity) -> {
+            if (released.contains(productId)) {
+                rows.add(new StockShardHandoff(productId, (int) (productId % shardCount), quantity));
+            }
+        });
+        handoffRepository.deleteByShardIds(shardIds);
+        handoffRepository.saveAll(rows);
+        logger.info("Node {} handed over the stock of {} products in shards {}", nodeId, rows.size(), shardIds);
+    }
+
+    private void createLeaseRows() {
+        for (int shardId = 0; shardId < shardCount; shardId++) {
+            if (leaseRepository.existsById(shardId)) {
+                continue;
+            }
+            try {
+                leaseRepository.saveAndFlush(new StockShardLease(shardId, null, null));
+            } catch (DataIntegrityViolationException e) {
+                // Another instance created it concurrently
+            }
+        }
+    }
+
+    private record Ownership(Set<Integer> shards, long leaseDeadlineNanos) {
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + ManagementFactory.getRuntimeMXBean().getPid();
+    }
+}
@@ -0,0 +1,179 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockScanWatermarkStore.Watermark;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.LongIntSnapshotMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Checkpoints the stock snapshot to a memory-mapped binary file so a restarted monitor keeps
+ * detecting changes (including the ones made while it was down) on its first poll.
+ * <p>
+ * Layout: magic, format version, creation time, optional scan watermark, entry count, then
+ * one (long productId, int quantity) pair per product.
+ */
+@Component
+public class StockSnapshotCheckpointStore {
+    private static final Logger logger = LoggerFactory.getLogger(StockSnapshotCheckpointStore.class);
+
+    private static final int MAGIC = 0x50565353; // "PVSS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 1 + 8 + 8 + 8 + 4;
+    private static final int ENTRY_BYTES = 8 + 4;
+    // Room for products added while the snapshot is being written, before the mapping has to grow
+    private static final int SPARE_ENTRIES = 1024;
+
+    private final Path checkpointFile;
+    private final int spareEntries;
+
+    @Autowired
+    public StockSnapshotCheckpointStore(@Value("${stock.monitoring.checkpoint.file:data/stock-snapshot.bin}") String checkpointFile) {
+        this(checkpointFile, SPARE_ENTRIES);
+    }
+
+    StockSnapshotCheckpointStore(String checkpointFile, int spareEntries) {
+        this.checkpointFile = Paths.get(checkpointFile);
+        this.spareEntries = spareEntries;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and atomically swaps it in place of the previous checkpoint.
+     * Products added while the entries are written are kept: the mapping grows past the spare room instead.
+     *
+     * @return number of entries written
+     */
+    public int write(LongIntSnapshotMap snapshot, Watermark watermark) throws IOException {
+        Path parent = checkpointFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        int expected = snapshot.size();
+        int capacity = expected + spareEntries;
+        int written;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * ENTRY_BYTES);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(System.currentTimeMillis());
+            if (watermark != null) {
+                buffer.put((byte) 1)
+                        .putLong(watermark.timestamp().toLocalDate().toEpochDay())
+                        .putLong(watermark.timestamp().toLocalTime().toNanoOfDay())
+                        .putLong(watermark.productId());
+            } else {
+                buffer.put((byte) 0).putLong(0L).putLong(0L).putLong(0L);
+            }
+            int countPosition = buffer.position();
+            buffer.putInt(0);
+            EntryWriter entries = new EntryWriter(channel, buffer);
+            try {
+                snapshot.forEach(entries::put);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            written = entries.count;
+            entries.buffer.force();
+            buffer.putInt(countPosition, written);
+            buffer.force();
+            if (entries.remaps > 0) {
+                logger.info("Stock snapshot grew from {} to {} entries while the checkpoint was written ({} remaps)",
+                        expected, written, entries.remaps);
+            }
+        }
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * Loads the last checkpoint into {@code target}.
+     *
+     * @return the checkpoint metadata, or {@code null} if there is no usable checkpoint
+     */
+    public Checkpoint restore(LongIntSnapshotMap target) {
+        if (!Files.isRegularFile(checkpointFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(checkpointFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                logger.warn("Ignoring stock snapshot checkpoint {} with unknown format", checkpointFile);
+                return null;
+            }
+            Instant createdAt = Instant.ofEpochMilli(buffer.getLong());
+            boolean hasWatermark = buffer.get() == 1;
+            long epochDay = buffer.getLong();
+            long nanoOfDay = buffer.getLong();
+            long watermarkId = buffer.getLong();
+            Watermark watermark = hasWatermark
+                    ? new Watermark(LocalDateTime.of(LocalDate.ofEpochDay(epochDay), LocalTime.ofNanoOfDay(nanoOfDay)), watermarkId)
+                    : null;
+            int entries = buffer.getInt();
+            if (buffer.remaining() < (long) entries * ENTRY_BYTES) {
+                logger.warn("Ignoring truncated stock snapshot checkpoint {}", checkpointFile);
+                return null;
+            }
+            for (int i = 0; i < entries; i++) {
+                target.update(buffer.getLong(), buffer.getInt());
+            }
+            return new Checkpoint(createdAt, watermark, entries);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not restore stock snapshot checkpoint {}: {}", checkpointFile, e.getMessage());
+            target.clear();
+            return null;
+        }
+    }
+
+    // Appends entries, mapping a further region of the file whenever the current one is full
+    private static final class EntryWriter {
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        private long bufferOffset;
+        private int count;
+        private int remaps;
+
+        EntryWriter(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        void put(long productId, int quantity) {
+            if (buffer.remaining() < ENTRY_BYTES) {
+                grow();
+            }
+            buffer.putLong(productId).putInt(quantity);
+            count++;
+        }
+
+        private void grow() {
+            long end = bufferOffset + buffer.position();
+            buffer.force();
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, end, (long) Math.max(SPARE_ENTRIES, count) * ENTRY_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bufferOffset = end;
+            remaps++;
+        }
+    }
+
+    public record Checkpoint(Instant createdAt, Watermark watermark, int entries) {
+    }
+}
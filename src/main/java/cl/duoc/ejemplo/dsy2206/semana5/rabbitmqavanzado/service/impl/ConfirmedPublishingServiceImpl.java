@@ -0,0 +1,165 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ConfirmedPublishingService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes through a confirm-enabled template and tracks every message by correlation ID until the
+ * broker acks it. Nacked, returned (unroutable) and failed sends are re-published with exponential
+ * backoff while still holding their slot of the in-flight window, which bounds memory and applies
+ * back-pressure to the caller only when the broker falls behind.
+ */
+@Service
+@ConditionalOnProperty(value = "stock.monitoring.publish.mode", havingValue = "confirmed")
+public class ConfirmedPublishingServiceImpl implements ConfirmedPublishingService {
+    private static final Logger logger = LoggerFactory.getLogger(ConfirmedPublishingServiceImpl.class);
+
+    private final RabbitTemplate confirmingRabbitTemplate;
+    private final Semaphore window;
+    private final int windowSize;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ScheduledExecutorService retryExecutor;
+
+    private final Counter acked;
+    private final Counter nacked;
+    private final Counter returned;
+    private final Counter retried;
+    private final Counter failed;
+
+    @Value("${stock.monitoring.publish.confirm.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${stock.monitoring.publish.confirm.initial-backoff:200}")
+    private long initialBackoffMs;
+
+    @Value("${stock.monitoring.publish.confirm.max-backoff:10000}")
+    private long maxBackoffMs;
+
+    public ConfirmedPublishingServiceImpl(@Qualifier("confirmingRabbitTemplate") RabbitTemplate confirmingRabbitTemplate,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${stock.monitoring.publish.confirm.window-size:5000}") int windowSize) {
+        this.confirmingRabbitTemplate = confirmingRabbitTemplate;
+        this.windowSize = windowSize;
+        this.window = new Semaphore(windowSize);
+        this.retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "publish-confirm-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("rabbitmq.publish.inflight", this, ConfirmedPublishingServiceImpl::getInFlightCount)
+                .description("Published messages awaiting a broker confirm")
+                .register(meterRegistry);
+        Gauge.builder("rabbitmq.publish.window.size", this, publisher -> publisher.windowSize)
+                .register(meterRegistry);
+        this.acked = Counter.builder("rabbitmq.publish.confirms").tag("result", "ack").register(meterRegistry);
+        this.nacked = Counter.builder("rabbitmq.publish.confirms").tag("result", "nack").register(meterRegistry);
+        this.returned = Counter.builder("rabbitmq.publish.confirms").tag("result", "returned").register(meterRegistry);
+        this.retried = Counter.builder("rabbitmq.publish.retries").register(meterRegistry);
+        this.failed = Counter.builder("rabbitmq.publish.failures").register(meterRegistry);
+    }
+
+    @Override
+    public void publish(String exchange, String routingKey, Object payload) {
+        Message message = confirmingRabbitTemplate.getMessageConverter().toMessage(payload, null);
+        String correlationId = Long.toString(sequence.incrementAndGet());
+        // Lets consumers de-duplicate the redeliveries at-least-once implies
+        message.getMessageProperties().setMessageId(correlationId);
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.increment();
+            logger.error("Interrupted while waiting for publish window, message {} dropped", correlationId);
+            return;
+        }
+        send(new Pending(exchange, routingKey, message, correlationId, 1));
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return windowSize - window.availablePermits();
+    }
+
+    @PreDestroy
+    void drain() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (getInFlightCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        if (getInFlightCount() > 0) {
+            logger.warn("Shutting down with {} unconfirmed messages", getInFlightCount());
+        }
+        retryExecutor.shutdownNow();
+    }
+
+    private void send(Pending pending) {
+        CorrelationData correlation = new CorrelationData(pending.correlationId());
+        correlation.getFuture().whenComplete((confirm, error) -> {
+            if (error == null && confirm.isAck() && correlation.getReturned() == null) {
+                acked.increment();
+                window.release();
+                return;
+            }
+            String reason;
+            if (correlation.getReturned() != null) {
+                returned.increment();
+                reason = "returned: " + correlation.getReturned().getReplyText();
+            } else {
+                nacked.increment();
+                reason = error != null ? error.getMessage() : confirm.getReason();
+            }
+            retry(pending, reason);
+        });
+        try {
+            confirmingRabbitTemplate.send(pending.exchange(), pending.routingKey(), pending.message(), correlation);
+        } catch (Exception e) {
+            // No confirm will ever arrive for a send that failed locally
+            correlation.getFuture().complete(new CorrelationData.Confirm(false, e.getMessage()));
+        }
+    }
+
+    private void retry(Pending pending, String reason) {
+        if (pending.attempt() >= maxAttempts) {
+            failed.increment();
+            window.release();
+            logger.error("Giving up on message {} to {}/{} after {} attempts: {}",
+                    pending.correlationId(), pending.exchange(), pending.routingKey(), pending.attempt(), reason);
+            return;
+        }
+        retried.increment();
+        long backoff = Math.min(maxBackoffMs, initialBackoffMs << Math.min(pending.attempt() - 1, 20));
+        logger.debug("Re-publishing message {} in {} ms ({})", pending.correlationId(), backoff, reason);
+        try {
+            retryExecutor.schedule(() -> send(pending.nextAttempt()), backoff, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            failed.increment();
+            window.release();
+            logger.error("Could not schedule retry of message {}: {}", pending.correlationId(), e.getMessage());
+        }
+    }
+
+    private record Pending(String exchange, String routingKey, Message message, String correlationId, int attempt) {
+
+        Pending nextAttempt() {
+            return new Pending(exchange, routingKey, message, correlationId, attempt + 1);
+        }
+    }
+}
@@ -1,24 +1,62 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.rabbitmq.client.Channel;
 
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ManualAckConsumer;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.MensajeService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class MensajeServiceImpl implements MensajeService {
 
 	private final RabbitTemplate rabbitTemplate;
-
-	public MensajeServiceImpl(RabbitTemplate rabbitTemplate) {
+	private final ManualAckConsumer mainQueueConsumer;
+	private final long processingTime;
+	private final long shutdownTimeout;
+	private final Timer procesados;
+	private final Timer fallidos;
+	private final Counter deadLetters;
+
+	public MensajeServiceImpl(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry,
+			@Value("${messaging.main-queue.workers:0}") int workers,
+			@Value("${messaging.main-queue.ack-batch-size:10}") int ackBatchSize,
+			@Value("${messaging.main-queue.processing-time:10000}") long processingTime,
+			@Value("${messaging.main-queue.shutdown-timeout:15000}") long shutdownTimeout) {
 		this.rabbitTemplate = rabbitTemplate;
+		this.mainQueueConsumer = new ManualAckConsumer("myQueue",
+				workers > 0 ? workers : Runtime.getRuntime().availableProcessors(), ackBatchSize);
+		this.processingTime = processingTime;
+		this.shutdownTimeout = shutdownTimeout;
+		this.procesados = tiempoDeProceso(meterRegistry, "success");
+		this.fallidos = tiempoDeProceso(meterRegistry, "failure");
+		this.deadLetters = Counter.builder("messaging.dead.letters")
+				.description("Messages received on the dead letter queue")
+				.tag("queue", RabbitMQConfig.DLX_QUEUE)
+				.register(meterRegistry);
+		Gauge.builder("messaging.listener.inflight", mainQueueConsumer, ManualAckConsumer::getInFlightCount)
+				.description("Deliveries dispatched to the worker pool and not yet acked")
+				.tag("queue", RabbitMQConfig.MAIN_QUEUE)
+				.register(meterRegistry);
+	}
+
+	@PreDestroy
+	void stopConsumer() {
+
+		mainQueueConsumer.shutdown(shutdownTimeout);
 	}
 
 	@Override
@@ -44,52 +82,53 @@ public class MensajeServiceImpl implements MensajeService {
 	@Override
 	public void recibirDeadLetter(Object objeto) {
 
+		deadLetters.increment();
 		System.out.println("Mensaje recibido en DLQ: " + objeto);
 	}
 
-	@RabbitListener(id = "listener-myQueue", queues = RabbitMQConfig.MAIN_QUEUE, ackMode = "MANUAL")
+	/**
+	 * Hands each delivery to the worker pool and returns, so the consumer keeps up to the prefetch count
+	 * in flight; acks are sent cumulatively in delivery-tag order once processing finishes.
+	 */
+	@RabbitListener(id = "listener-myQueue", queues = RabbitMQConfig.MAIN_QUEUE,
+			containerFactory = RabbitMQConfig.MANUAL_ACK_CONTAINER_FACTORY)
 	@Override
 	public void recibirMensajeConAckManual(Message mensaje, Channel canal) throws IOException {
 
+		mainQueueConsumer.dispatch(mensaje, canal, this::procesarYMedir);
+	}
+
+	// Worker time per message; the container's own timer only covers the hand-off to the pool
+	private void procesarYMedir(Message mensaje) {
+
+		long inicio = System.nanoTime();
 		try {
-			System.out.println("Mensaje recibido: " + new String(mensaje.getBody()));
-			Thread.sleep(10000);
-
-			canal.basicAck(mensaje.getMessageProperties().getDeliveryTag(), false);
-			System.out.println("Acknowledge OK enviado");
-		} catch (Exception e) {
-			canal.basicNack(mensaje.getMessageProperties().getDeliveryTag(), false, false);
-			System.out.println("Acknowledge NO OK enviado");
+			procesarMensaje(mensaje);
+			procesados.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		} catch (RuntimeException e) {
+			fallidos.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+			throw e;
 		}
 	}
 
-//	@RabbitListener(id = "listener-price-changes", queues = RabbitMQConfig.PRICE_CHANGE_QUEUE)
-//	public void recibirCambioPrecio(PriceChangeEventDTO priceChangeEvent) {
-//		try {
-//			System.out.println("=== CAMBIO DE PRECIO DETECTADO ===");
-//			System.out.println("Producto ID: " + priceChangeEvent.getProductId());
-//			System.out.println("Nombre: " + priceChangeEvent.getProductName());
-//			System.out.println("Categoría: " + priceChangeEvent.getProductCategory());
-//			System.out.println("Precio anterior: $" + priceChangeEvent.getOldPrice());
-//			System.out.println("Precio nuevo: $" + priceChangeEvent.getNewPrice());
-//			System.out.println("Cambio: $" + priceChangeEvent.getChangeAmount());
-//			System.out.println("Porcentaje de cambio: " + String.format("%.2f%%", priceChangeEvent.getChangePercentage()));
-//			System.out.println("Tipo de cambio: " + priceChangeEvent.getChangeTimestamp());
-//			System.out.println("Fecha/Hora: " + priceChangeEvent.getChangeTimestamp());
-//			System.out.println("Razón: " + priceChangeEvent.getChangeReason());
-//			System.out.println("=====================================");
-//			
-//			// Here you could implement business logic like:
-//			// - Notify inventory management system
-//			// - Update pricing analytics
-//			// - Send notifications to customers
-//			// - Log for audit purposes
-//			// - Trigger price optimization algorithms
-//			
-//		} catch (Exception e) {
-//			System.err.println("Error procesando cambio de precio: " + e.getMessage());
-//			e.printStackTrace();
-//		}
-//	}
+	private void procesarMensaje(Message mensaje) {
+
+		System.out.println("Mensaje recibido: " + new String(mensaje.getBody()));
+		try {
+			Thread.sleep(processingTime);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Procesamiento interrumpido", e);
+		}
+	}
+
+	private static Timer tiempoDeProceso(MeterRegistry meterRegistry, String result) {
+
+		return Timer.builder("messaging.listener.processing")
+				.description("Processing time of one delivery")
+				.tag("queue", RabbitMQConfig.MAIN_QUEUE)
+				.tag("result", result)
+				.register(meterRegistry);
+	}
 
 }
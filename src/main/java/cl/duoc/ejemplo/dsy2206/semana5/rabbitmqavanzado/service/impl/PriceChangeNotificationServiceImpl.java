@@ -0,0 +1,67 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.PriceChangeNotificationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+public class PriceChangeNotificationServiceImpl implements PriceChangeNotificationService {
+    private static final Logger logger = LoggerFactory.getLogger(PriceChangeNotificationServiceImpl.class);
+
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${price.monitoring.notification-enabled:true}")
+    private boolean notificationsEnabled;
+
+    public PriceChangeNotificationServiceImpl(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    @Override
+    public void notifyPriceChange(PriceChangeEventDTO priceChangeEvent) {
+        notifyPriceChanges(List.of(priceChangeEvent));
+    }
+
+    /**
+     * Publishes the whole batch on one channel checkout instead of one per event.
+     */
+    @Override
+    public void notifyPriceChanges(List<PriceChangeEventDTO> priceChangeEvents) {
+        if (priceChangeEvents.isEmpty()) {
+            return;
+        }
+        if (!notificationsEnabled) {
+            logger.debug("Price change notifications are disabled. Skipping {} events", priceChangeEvents.size());
+            return;
+        }
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (PriceChangeEventDTO event : priceChangeEvents) {
+                    operations.convertAndSend(RabbitMQConfig.PRICE_CHANGE_EXCHANGE, RabbitMQConfig.PRICE_CHANGE_ROUTING_KEY, event);
+                }
+                return null;
+            });
+            logger.info("Sent {} price change notifications", priceChangeEvents.size());
+        } catch (Exception e) {
+            logger.error("Failed to send batch of {} price change notifications. Error: {}", priceChangeEvents.size(), e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void setNotificationsEnabled(boolean enabled) {
+        this.notificationsEnabled = enabled;
+        logger.info("Price change notifications {}", enabled ? "enabled" : "disabled");
+    }
+
+    @Override
+    public boolean isNotificationsEnabled() {
+        return notificationsEnabled;
+    }
+}
@@ -1,18 +1,40 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
 
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ConfirmedPublishingService;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeCoalescer;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeNotificationService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 @Service
 public class StockChangeNotificationServiceImpl implements StockChangeNotificationService {
     private static final Logger logger = LoggerFactory.getLogger(StockChangeNotificationServiceImpl.class);
 
     private final RabbitTemplate rabbitTemplate;
+    private final BatchingRabbitTemplate batchingRabbitTemplate;
+    private final ConfirmedPublishingService confirmedPublishingService;
+    private final StockChangeCoalescer coalescer;
+    private final String publishMode;
+
+    private final Timer publishTimer;
+    private final Timer flushTimer;
+    private final Counter published;
+    private final Counter failed;
 
     @Value("${stock.monitoring.queue-name:stock-changes}")
     private String stockChangeQueueName;
@@ -20,8 +42,39 @@ public class StockChangeNotificationServiceImpl implements StockChangeNotificati
     @Value("${stock.monitoring.enabled:true}")
     private boolean notificationsEnabled;
 
-    public StockChangeNotificationServiceImpl(RabbitTemplate rabbitTemplate) {
+    /**
+     * @param publishMode direct: one message per event. batched: events packed by the BatchingRabbitTemplate.
+     *                    confirmed: one message per event, tracked by publisher confirms and retried until acked.
+     */
+    public StockChangeNotificationServiceImpl(RabbitTemplate rabbitTemplate,
+                                              BatchingRabbitTemplate batchingRabbitTemplate,
+                                              ObjectProvider<ConfirmedPublishingService> confirmedPublishingService,
+                                              StockChangeCoalescer coalescer,
+                                              MeterRegistry meterRegistry,
+                                              @Value("${stock.monitoring.publish.mode:batched}") String publishMode) {
         this.rabbitTemplate = rabbitTemplate;
+        this.batchingRabbitTemplate = batchingRabbitTemplate;
+        this.confirmedPublishingService = confirmedPublishingService.getIfAvailable();
+        this.coalescer = coalescer;
+        this.publishMode = publishMode;
+        // In batched mode a publish only buffers; the broker round-trip shows up in the flush timer
+        this.publishTimer = Timer.builder("stock.notifications.publish")
+                .description("Time to hand one stock change event to the publisher")
+                .tag("mode", publishMode)
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("stock.notifications.flush")
+                .description("Time to send the buffered batch to the broker")
+                .tag("mode", publishMode)
+                .register(meterRegistry);
+        this.published = Counter.builder("stock.notifications.published")
+                .tag("mode", publishMode).tag("result", "success")
+                .register(meterRegistry);
+        this.failed = Counter.builder("stock.notifications.published")
+                .tag("mode", publishMode).tag("result", "failure")
+                .register(meterRegistry);
+        Gauge.builder("stock.notifications.coalescer.pending", coalescer, StockChangeCoalescer::pendingCount)
+                .description("Stock change events held back by the coalescing window")
+                .register(meterRegistry);
     }
 
     @Override
@@ -30,15 +83,85 @@ public class StockChangeNotificationServiceImpl implements StockChangeNotificati
             logger.debug("Stock change notifications are disabled. Skipping notification for product ID: {}", stockChangeEvent.getProductId());
             return;
         }
+        if (coalescer.isEnabled()) {
+            coalescer.offer(stockChangeEvent, System.currentTimeMillis());
+            return;
+        }
+        publish(stockChangeEvent);
+    }
+
+    private void publish(StockChangeEventDTO stockChangeEvent) {
+        long startNanos = System.nanoTime();
         try {
-            logger.info("Sending stock change notification for product ID: {} - {} quantity changed {} new quantity {} sale total {}", stockChangeEvent.getProductId(), stockChangeEvent.getProductName(), stockChangeEvent.getQuantityChanged(), stockChangeEvent.getNewQuantity(), stockChangeEvent.getSaleTotal());
-            rabbitTemplate.convertAndSend(stockChangeQueueName, stockChangeEvent);
-            logger.info("Stock change notification sent successfully for product ID: {}", stockChangeEvent.getProductId());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sending stock change notification for product ID: {} - {} quantity changed {} new quantity {} sale total {}", stockChangeEvent.getProductId(), stockChangeEvent.getProductName(), stockChangeEvent.getQuantityChanged(), stockChangeEvent.getNewQuantity(), stockChangeEvent.getSaleTotal());
+            }
+            switch (publishMode) {
+                case "confirmed" -> confirmedPublishingService.publish("", stockChangeQueueName, stockChangeEvent);
+                // The batching template only blocks when a full batch is handed to the broker
+                case "batched" -> batchingRabbitTemplate.convertAndSend(stockChangeQueueName, stockChangeEvent);
+                default -> rabbitTemplate.convertAndSend(stockChangeQueueName, stockChangeEvent);
+            }
+            publishTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            published.increment();
         } catch (Exception e) {
+            failed.increment();
             logger.error("Failed to send stock change notification for product ID: {}. Error: {}", stockChangeEvent.getProductId(), e.getMessage(), e);
         }
     }
 
+    @Override
+    public void flush() {
+        if (coalescer.isEnabled()) {
+            publishAll(coalescer.drainExpired(System.currentTimeMillis()));
+        }
+        flushBatch();
+    }
+
+    /**
+     * Releases coalesced events whose window has elapsed, independently of the poll cadence.
+     */
+    @Scheduled(fixedDelayString = "${stock.monitoring.coalesce.flush-interval:1000}")
+    public void publishCoalesced() {
+        if (!coalescer.isEnabled() || coalescer.pendingCount() == 0) {
+            return;
+        }
+        List<StockChangeEventDTO> released = coalescer.drainExpired(System.currentTimeMillis());
+        publishAll(released);
+        flushBatch();
+        logger.debug("Released {} coalesced stock change events ({} merged so far)", released.size(), coalescer.getMergedEvents());
+    }
+
+    @PreDestroy
+    public void publishPendingOnShutdown() {
+        if (coalescer.isEnabled() && coalescer.pendingCount() > 0) {
+            publishAll(coalescer.drainAll());
+            flushBatch();
+        }
+    }
+
+    private void publishAll(List<StockChangeEventDTO> events) {
+        if (!notificationsEnabled) {
+            return;
+        }
+        for (StockChangeEventDTO event : events) {
+            publish(event);
+        }
+    }
+
+    private void flushBatch() {
+        if (!"batched".equals(publishMode)) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            batchingRabbitTemplate.flush();
+            flushTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            logger.error("Failed to flush buffered stock change notifications. Error: {}", e.getMessage(), e);
+        }
+    }
+
     @Override
     public void setNotificationsEnabled(boolean enabled) {
         this.notificationsEnabled = enabled;
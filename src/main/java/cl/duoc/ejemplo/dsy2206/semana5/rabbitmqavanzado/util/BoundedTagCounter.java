@@ -0,0 +1,63 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One counter per value of a tag that comes from data (e.g. product category), capped at
+ * {@code maxValues} distinct values so a messy catalog cannot flood the registry. Values past the cap,
+ * and null, share the {@value #OTHER} counter. After the first increment of a value, recording is a map
+ * lookup plus the counter increment.
+ */
+public final class BoundedTagCounter {
+
+    public static final String OTHER = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final String name;
+    private final Tags tags;
+    private final String tagKey;
+    private final int maxValues;
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Counter other;
+
+    public BoundedTagCounter(MeterRegistry meterRegistry, String name, Tags tags, String tagKey, int maxValues) {
+        this.meterRegistry = meterRegistry;
+        this.name = name;
+        this.tags = tags;
+        this.tagKey = tagKey;
+        this.maxValues = maxValues;
+        this.other = register(OTHER);
+    }
+
+    public void increment(String value) {
+        counter(value).increment();
+    }
+
+    /** Distinct tag values with their own counter, {@value #OTHER} excluded. */
+    public int size() {
+        return counters.size();
+    }
+
+    private Counter counter(String value) {
+        if (value == null) {
+            return other;
+        }
+        Counter counter = counters.get(value);
+        if (counter != null) {
+            return counter;
+        }
+        // The cap may be overshot by a few values under a race, never by more than the number of writers
+        if (counters.size() >= maxValues) {
+            return other;
+        }
+        return counters.computeIfAbsent(value, this::register);
+    }
+
+    private Counter register(String value) {
+        return Counter.builder(name).tags(tags).tag(tagKey, value).register(meterRegistry);
+    }
+}
@@ -0,0 +1,90 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Price arithmetic on long minor units (cents) at the 2-decimal scale of the {@code PRICE} column, so the
+ * detection loops can compare prices and check thresholds without allocating. Every result is identical to
+ * the {@link BigDecimal} expression it replaces; inputs outside {@link #MAX_MINOR_UNITS} fall back to that
+ * expression.
+ */
+public final class FixedPoint {
+
+    public static final int SCALE = 2;
+
+    /** Largest magnitude handled in long arithmetic: the scale-4 ratio numerator must not overflow. */
+    public static final long MAX_MINOR_UNITS = 100_000_000_000_000L;
+
+    private static final long RATIO_UNIT = 10_000;
+    private static final BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
+    private static final long[] POWERS_OF_TEN = {1, 10, 100};
+
+    private FixedPoint() {
+    }
+
+    /** {@code amount} rounded HALF_UP to minor units. */
+    public static long toMinorUnits(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    /**
+     * Same value as {@code (newPrice - oldPrice).divide(oldPrice, 4, HALF_UP).multiply(100).doubleValue()},
+     * and 0.0 when the old price is zero.
+     */
+    public static double changePercentage(long oldMinorUnits, long newMinorUnits) {
+        if (oldMinorUnits == 0) {
+            return 0.0;
+        }
+        if (!inRange(oldMinorUnits) || !inRange(newMinorUnits)) {
+            return changePercentage(toBigDecimal(oldMinorUnits), toBigDecimal(newMinorUnits));
+        }
+        // The scale-4 quotient as a long, then q * 10^-4 * 100 == q / 100, which double division rounds
+        // exactly like BigDecimal.doubleValue()
+        return changeRatio(newMinorUnits - oldMinorUnits, oldMinorUnits) / 100.0;
+    }
+
+    /**
+     * {@link #changePercentage(long, long)} for prices that are still {@link BigDecimal}s, e.g. on an entity.
+     * Values with more than two decimals take the {@code BigDecimal} path.
+     */
+    public static double changePercentage(BigDecimal oldPrice, BigDecimal newPrice) {
+        if (oldPrice.signum() == 0) {
+            return 0.0;
+        }
+        long oldMinorUnits = exactMinorUnits(oldPrice);
+        long newMinorUnits = exactMinorUnits(newPrice);
+        if (oldMinorUnits != Long.MIN_VALUE && newMinorUnits != Long.MIN_VALUE) {
+            return changeRatio(newMinorUnits - oldMinorUnits, oldMinorUnits) / 100.0;
+        }
+        return newPrice.subtract(oldPrice).divide(oldPrice, 4, RoundingMode.HALF_UP).multiply(ONE_HUNDRED).doubleValue();
+    }
+
+    // round(amount / base, 4 decimals, HALF_UP) as an unscaled long
+    private static long changeRatio(long amount, long base) {
+        long numerator = amount * RATIO_UNIT;
+        long quotient = numerator / base;
+        long remainder = numerator % base;
+        if (remainder != 0 && Math.abs(remainder) >= Math.abs(base) - Math.abs(remainder)) {
+            quotient += (numerator < 0) == (base < 0) ? 1 : -1;
+        }
+        return quotient;
+    }
+
+    // Minor units when the value has at most two decimals and is in range, Long.MIN_VALUE otherwise
+    private static long exactMinorUnits(BigDecimal amount) {
+        int scale = amount.scale();
+        if (scale < 0 || scale > SCALE || amount.precision() > 12) {
+            return Long.MIN_VALUE;
+        }
+        return amount.unscaledValue().longValue() * POWERS_OF_TEN[SCALE - scale];
+    }
+
+    private static boolean inRange(long minorUnits) {
+        return minorUnits > -MAX_MINOR_UNITS && minorUnits < MAX_MINOR_UNITS;
+    }
+}
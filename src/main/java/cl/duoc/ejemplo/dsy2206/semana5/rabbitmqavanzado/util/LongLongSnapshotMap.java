@@ -0,0 +1,333 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Primitive long -> long counterpart of {@link LongIntSnapshotMap}, used for snapshots whose values
+ * do not fit an int (prices in minor units). Same layout and locking, 16 bytes / load factor per entry.
+ */
+public final class LongLongSnapshotMap {
+
+    /** Returned by {@link #get(long)}, {@link #update(long, long)} and {@link #remove(long)} when the key is absent. */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final int SEGMENT_BITS = 4;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // Consecutive IDs share a block of slots, so a scan in ID order walks memory sequentially
+    private static final int BLOCK_BITS = 3;
+    private static final long BLOCK_MASK = (1L << BLOCK_BITS) - 1;
+
+    private final Segment[] segments;
+
+    public LongLongSnapshotMap() {
+        this(1024);
+    }
+
+    public LongLongSnapshotMap(int expectedSize) {
+        this.segments = new Segment[1 << SEGMENT_BITS];
+        int perSegment = Math.max(16, expectedSize >> SEGMENT_BITS);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    public long get(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * Stores {@code value} for {@code key}. Nothing is written when the key already holds {@code value}.
+     *
+     * @return the previous value, or {@link #NO_VALUE} if the key was absent
+     */
+    public long update(long key, long value) {
+        long hash = hash(key);
+        return segmentFor(hash).update(key, hash, value);
+    }
+
+    public long remove(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != NO_VALUE;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Visits every entry. Each segment is read-locked while it is being visited, so the consumer
+     * must not write back into this map.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (Segment segment : segments) {
+            segment.forEach(consumer);
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * Scatters blocks of consecutive keys with the Stafford variant 13 MurmurHash3 finalizer while keeping
+     * the low bits of the key, so neighbouring product IDs land in the same cache line.
+     */
+    private static long hash(long key) {
+        long h = key >>> BLOCK_BITS;
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        h = h ^ (h >>> 31);
+        return (h & (-1L << BLOCK_BITS)) | (key & BLOCK_MASK);
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    /**
+     * Keys, values and mask are swapped together on resize so an optimistic reader always sees
+     * arrays of the same length.
+     */
+    private static final class Table {
+        final long[] keys;
+        final long[] values;
+        final int mask;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new long[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+
+    /**
+     * One open-addressing table. Slot emptiness is tracked with key 0, so the real key 0 is stored
+     * out of line in {@code zeroValue}.
+     */
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private Table table;
+        private int size;
+        private int resizeThreshold;
+        private boolean hasZeroKey;
+        private long zeroValue;
+
+        Segment(int expectedSize) {
+            allocate(tableSizeFor(expectedSize));
+        }
+
+        long get(long key, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            long value = find(key, hash);
+            if (lock.validate(stamp)) {
+                return value;
+            }
+            stamp = lock.readLock();
+            try {
+                return find(key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long update(long key, long hash, long value) {
+            long stamp = lock.tryOptimisticRead();
+            long current = find(key, hash);
+            if (current == value && lock.validate(stamp)) {
+                return current;
+            }
+            stamp = lock.writeLock();
+            try {
+                return put(key, hash, value);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        long remove(long key, long hash) {
+            long stamp = lock.writeLock();
+            try {
+                if (key == 0L) {
+                    if (!hasZeroKey) {
+                        return NO_VALUE;
+                    }
+                    hasZeroKey = false;
+                    size--;
+                    return zeroValue;
+                }
+                Table t = table;
+                int slot = (int) hash & t.mask;
+                while (true) {
+                    long k = t.keys[slot];
+                    if (k == 0L) {
+                        return NO_VALUE;
+                    }
+                    if (k == key) {
+                        long previous = t.values[slot];
+                        shiftBack(t, slot);
+                        size--;
+                        return previous;
+                    }
+                    slot = (slot + 1) & t.mask;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                allocate(table.keys.length);
+                hasZeroKey = false;
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void forEach(EntryConsumer consumer) {
+            long stamp = lock.readLock();
+            try {
+                if (hasZeroKey) {
+                    consumer.accept(0L, zeroValue);
+                }
+                Table t = table;
+                for (int i = 0; i < t.keys.length; i++) {
+                    if (t.keys[i] != 0L) {
+                        consumer.accept(t.keys[i], t.values[i]);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Bounded by the table length so a torn optimistic read can never spin forever
+        private long find(long key, long hash) {
+            if (key == 0L) {
+                return hasZeroKey ? zeroValue : NO_VALUE;
+            }
+            Table t = table;
+            int slot = (int) hash & t.mask;
+            for (int probes = 0; probes <= t.mask; probes++) {
+                long k = t.keys[slot];
+                if (k == key) {
+                    return t.values[slot];
+                }
+                if (k == 0L) {
+                    return NO_VALUE;
+                }
+                slot = (slot + 1) & t.mask;
+            }
+            return NO_VALUE;
+        }
+
+        private long put(long key, long hash, long value) {
+            if (key == 0L) {
+                long previous = hasZeroKey ? zeroValue : NO_VALUE;
+                if (!hasZeroKey) {
+                    hasZeroKey = true;
+                    size++;
+                }
+                zeroValue = value;
+                return previous;
+            }
+            Table t = table;
+            int slot = (int) hash & t.mask;
+            while (true) {
+                long k = t.keys[slot];
+                if (k == key) {
+                    long previous = t.values[slot];
+                    if (previous != value) {
+                        t.values[slot] = value;
+                    }
+                    return previous;
+                }
+                if (k == 0L) {
+                    t.keys[slot] = key;
+                    t.values[slot] = value;
+                    if (++size > resizeThreshold) {
+                        resize();
+                    }
+                    return NO_VALUE;
+                }
+                slot = (slot + 1) & t.mask;
+            }
+        }
+
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        private static void shiftBack(Table t, int slot) {
+            int gap = slot;
+            int next = (gap + 1) & t.mask;
+            while (t.keys[next] != 0L) {
+                int ideal = (int) hash(t.keys[next]) & t.mask;
+                if (((next - ideal) & t.mask) >= ((next - gap) & t.mask)) {
+                    t.keys[gap] = t.keys[next];
+                    t.values[gap] = t.values[next];
+                    gap = next;
+                }
+                next = (next + 1) & t.mask;
+            }
+            t.keys[gap] = 0L;
+        }
+
+        private void resize() {
+            Table old = table;
+            Table resized = new Table(old.keys.length << 1);
+            for (int i = 0; i < old.keys.length; i++) {
+                long k = old.keys[i];
+                if (k != 0L) {
+                    int slot = (int) hash(k) & resized.mask;
+                    while (resized.keys[slot] != 0L) {
+                        slot = (slot + 1) & resized.mask;
+                    }
+                    resized.keys[slot] = k;
+                    resized.values[slot] = old.values[i];
+                }
+            }
+            table = resized;
+            resizeThreshold = (int) (resized.keys.length * LOAD_FACTOR);
+        }
+
+        private void allocate(int capacity) {
+            table = new Table(capacity);
+            resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        private static int tableSizeFor(int expectedSize) {
+            int capacity = (int) Math.ceil(expectedSize / LOAD_FACTOR);
+            return Math.max(16, Integer.highestOneBit(capacity - 1) << 1);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+-- Change scans: range on LAST_PRICE_UPDATE, and the (LAST_PRICE_UPDATE, ID) keyset order of the delta
+-- stock scan, the price scan and the stale/updated-after queries
+CREATE INDEX IX_PRODUCT_LAST_PRICE_UPDATE ON PRODUCT (LAST_PRICE_UPDATE, ID);
+
+-- Active listing by category (findActiveProductsByCategory and its summary projection). CATEGORY leads:
+-- ACTIVE alone is not selective, and an ACTIVE-first index would be picked for plain active scans
+CREATE INDEX IX_PRODUCT_ACTIVE_CATEGORY ON PRODUCT (CATEGORY, ACTIVE, ID);
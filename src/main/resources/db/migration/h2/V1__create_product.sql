@@ -0,0 +1,14 @@
+-- Embedded-database counterpart of oracle/V1__create_product.sql
+CREATE TABLE PRODUCT (
+    ID                BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    NAME              VARCHAR(255),
+    DESCRIPTION       VARCHAR(255),
+    QUANTITY          INTEGER        NOT NULL,
+    CATEGORY          VARCHAR(255),
+    ACTIVE            BOOLEAN        NOT NULL,
+    PRICE             NUMERIC(10, 2),
+    LAST_PRICE_UPDATE TIMESTAMP,
+    PREVIOUS_PRICE    NUMERIC(10, 2),
+    VERSION           BIGINT,
+    CONSTRAINT PK_PRODUCT PRIMARY KEY (ID)
+);
@@ -0,0 +1,13 @@
+-- Embedded-database counterpart of oracle/V2__stock_sharding.sql
+CREATE TABLE STOCK_SHARD_LEASE (
+    SHARD_ID   INTEGER      NOT NULL,
+    OWNER_ID   VARCHAR(128),
+    EXPIRES_AT TIMESTAMP,
+    CONSTRAINT PK_STOCK_SHARD_LEASE PRIMARY KEY (SHARD_ID)
+);
+
+CREATE TABLE STOCK_MONITOR_NODE (
+    NODE_ID      VARCHAR(128) NOT NULL,
+    HEARTBEAT_AT TIMESTAMP,
+    CONSTRAINT PK_STOCK_MONITOR_NODE PRIMARY KEY (NODE_ID)
+);
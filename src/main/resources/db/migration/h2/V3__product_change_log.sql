@@ -0,0 +1,17 @@
+-- Embedded-database counterpart of oracle/V3__product_change_log.sql (there is no capture trigger on H2)
+CREATE TABLE PRODUCT_CHANGE_LOG (
+    CHANGE_ID        BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    PRODUCT_ID       BIGINT         NOT NULL,
+    PRODUCT_NAME     VARCHAR(255),
+    PRODUCT_CATEGORY VARCHAR(255),
+    OLD_QUANTITY     INTEGER,
+    NEW_QUANTITY     INTEGER,
+    OLD_PRICE        NUMERIC(10, 2),
+    NEW_PRICE        NUMERIC(10, 2),
+    CHANGED_AT       TIMESTAMP      NOT NULL,
+    CLAIMED_BY       VARCHAR(128),
+    CLAIMED_AT       TIMESTAMP,
+    CONSTRAINT PK_PRODUCT_CHANGE_LOG PRIMARY KEY (CHANGE_ID)
+);
+
+CREATE INDEX IX_PRODUCT_CHANGE_LOG_CLAIM ON PRODUCT_CHANGE_LOG (CLAIMED_BY, CHANGE_ID);
@@ -0,0 +1,9 @@
+-- Embedded-database counterpart of oracle/V7__stock_shard_handoff.sql
+CREATE TABLE STOCK_SHARD_HANDOFF (
+    PRODUCT_ID BIGINT  NOT NULL,
+    SHARD_ID   INTEGER NOT NULL,
+    QUANTITY   INTEGER NOT NULL,
+    CONSTRAINT PK_STOCK_SHARD_HANDOFF PRIMARY KEY (PRODUCT_ID)
+);
+
+CREATE INDEX IX_STOCK_SHARD_HANDOFF_SHARD ON STOCK_SHARD_HANDOFF (SHARD_ID);
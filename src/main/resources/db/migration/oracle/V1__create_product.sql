@@ -0,0 +1,14 @@
+-- PRODUCT as created before migrations were managed; existing schemas are baselined at version 1
+CREATE TABLE PRODUCT (
+    ID                NUMBER(19) GENERATED BY DEFAULT AS IDENTITY,
+    NAME              VARCHAR2(255),
+    DESCRIPTION       VARCHAR2(255),
+    QUANTITY          NUMBER(10)     NOT NULL,
+    CATEGORY          VARCHAR2(255),
+    ACTIVE            NUMBER(1)      NOT NULL,
+    PRICE             NUMBER(10, 2),
+    LAST_PRICE_UPDATE TIMESTAMP,
+    PREVIOUS_PRICE    NUMBER(10, 2),
+    VERSION           NUMBER(19),
+    CONSTRAINT PK_PRODUCT PRIMARY KEY (ID)
+);
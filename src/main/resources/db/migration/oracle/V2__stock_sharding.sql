@@ -0,0 +1,13 @@
+-- Tables used when stock.monitoring.sharding.enabled=true
+CREATE TABLE STOCK_SHARD_LEASE (
+    SHARD_ID   NUMBER(10)    NOT NULL,
+    OWNER_ID   VARCHAR2(128),
+    EXPIRES_AT TIMESTAMP,
+    CONSTRAINT PK_STOCK_SHARD_LEASE PRIMARY KEY (SHARD_ID)
+);
+
+CREATE TABLE STOCK_MONITOR_NODE (
+    NODE_ID      VARCHAR2(128) NOT NULL,
+    HEARTBEAT_AT TIMESTAMP,
+    CONSTRAINT PK_STOCK_MONITOR_NODE PRIMARY KEY (NODE_ID)
+);
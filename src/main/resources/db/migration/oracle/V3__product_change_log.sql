@@ -0,0 +1,18 @@
+-- Outbox table used when outbox.relay.enabled=true; the Oracle PRODUCT capture trigger is installed from
+-- db/migration/outbox/oracle only while the relay is enabled
+CREATE TABLE PRODUCT_CHANGE_LOG (
+    CHANGE_ID        NUMBER(19) GENERATED BY DEFAULT AS IDENTITY,
+    PRODUCT_ID       NUMBER(19)     NOT NULL,
+    PRODUCT_NAME     VARCHAR2(255),
+    PRODUCT_CATEGORY VARCHAR2(255),
+    OLD_QUANTITY     NUMBER(10),
+    NEW_QUANTITY     NUMBER(10),
+    OLD_PRICE        NUMBER(10, 2),
+    NEW_PRICE        NUMBER(10, 2),
+    CHANGED_AT       TIMESTAMP      NOT NULL,
+    CLAIMED_BY       VARCHAR2(128),
+    CLAIMED_AT       TIMESTAMP,
+    CONSTRAINT PK_PRODUCT_CHANGE_LOG PRIMARY KEY (CHANGE_ID)
+);
+
+CREATE INDEX IX_PRODUCT_CHANGE_LOG_CLAIM ON PRODUCT_CHANGE_LOG (CLAIMED_BY, CHANGE_ID);
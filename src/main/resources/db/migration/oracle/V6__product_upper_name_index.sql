@@ -0,0 +1,2 @@
+-- Function-based index for findByNameIgnoreCase (WHERE UPPER(NAME) = UPPER(:name))
+CREATE INDEX IX_PRODUCT_UPPER_NAME ON PRODUCT (UPPER(NAME));
@@ -0,0 +1,10 @@
+-- Last known stock of the products of a released shard, written in the release transaction and consumed
+-- by the node that claims the shard next, which diffs its first scan against it
+CREATE TABLE STOCK_SHARD_HANDOFF (
+    PRODUCT_ID NUMBER(19) NOT NULL,
+    SHARD_ID   NUMBER(10) NOT NULL,
+    QUANTITY   NUMBER(10) NOT NULL,
+    CONSTRAINT PK_STOCK_SHARD_HANDOFF PRIMARY KEY (PRODUCT_ID)
+);
+
+CREATE INDEX IX_STOCK_SHARD_HANDOFF_SHARD ON STOCK_SHARD_HANDOFF (SHARD_ID);
@@ -0,0 +1,16 @@
+-- Captures every write to PRODUCT, including the ones made by other services.
+-- A Flyway callback, not a versioned migration: this location is only added while outbox.relay.enabled=true
+-- and outbox.write-path-capture.enabled=false (OutboxTriggerMigrationConfig), and CREATE OR REPLACE makes
+-- re-running it on every migrate harmless. Turning the relay off again does not remove the trigger:
+-- DROP TRIGGER TRG_PRODUCT_CHANGE_LOG, or PRODUCT_CHANGE_LOG keeps growing.
+CREATE OR REPLACE TRIGGER TRG_PRODUCT_CHANGE_LOG
+AFTER UPDATE OF QUANTITY, PRICE ON PRODUCT
+FOR EACH ROW
+WHEN (OLD.QUANTITY <> NEW.QUANTITY OR DECODE(OLD.PRICE, NEW.PRICE, 0, 1) = 1)
+BEGIN
+    INSERT INTO PRODUCT_CHANGE_LOG
+        (PRODUCT_ID, PRODUCT_NAME, PRODUCT_CATEGORY, OLD_QUANTITY, NEW_QUANTITY, OLD_PRICE, NEW_PRICE, CHANGED_AT)
+    VALUES
+        (:NEW.ID, :NEW.NAME, :NEW.CATEGORY, :OLD.QUANTITY, :NEW.QUANTITY, :OLD.PRICE, :NEW.PRICE, SYSTIMESTAMP);
+END;
+/
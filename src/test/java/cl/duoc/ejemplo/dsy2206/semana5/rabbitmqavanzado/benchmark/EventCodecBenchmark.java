@@ -0,0 +1,89 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.benchmark;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.CompactBinaryMessageConverter;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize and deserialize cost of the stock and price events with the Jackson JSON converter
+ * against {@link CompactBinaryMessageConverter}, separately and as the full publish-to-listener round
+ * trip. Body and header sizes of both formats are printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventCodecBenchmark {
+
+    @Param({"stock", "price"})
+    private String eventType;
+
+    @Param({"json", "binary"})
+    private String format;
+
+    private AbstractMessageConverter converter;
+    private Object event;
+    private Message encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        converter = "json".equals(format) ? new Jackson2JsonMessageConverter() : new CompactBinaryMessageConverter();
+        LocalDateTime timestamp = LocalDateTime.of(2025, 6, 1, 12, 30, 15, 123_000_000);
+        if ("stock".equals(eventType)) {
+            event = new StockChangeEventDTO(184_467L, "Café molido tostado 500g", "Almacén", 3, 97,
+                    new BigDecimal("14970.00"), timestamp);
+        } else {
+            event = new PriceChangeEventDTO(184_467L, "Café molido tostado 500g", "Almacén", new BigDecimal("4990.00"),
+                    new BigDecimal("5490.00"), new BigDecimal("500.00"), 10.02, "INCREASE", timestamp, "PRICE_SCAN");
+        }
+        encoded = converter.toMessage(event, new MessageProperties());
+        System.out.printf("%n[%s/%s] body: %d bytes, headers: %d bytes%n", eventType, format,
+                encoded.getBody().length, encoded.getMessageProperties().getHeaders().entrySet().stream()
+                        .mapToInt(e -> e.getKey().length() + String.valueOf(e.getValue()).length())
+                        .sum());
+    }
+
+    @Benchmark
+    public Message serialize() {
+        return converter.toMessage(event, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return converter.fromMessage(encoded);
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        return converter.fromMessage(converter.toMessage(event, new MessageProperties()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EventCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
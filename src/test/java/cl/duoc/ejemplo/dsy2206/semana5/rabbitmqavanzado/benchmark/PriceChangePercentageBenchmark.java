@@ -0,0 +1,78 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.benchmark;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Product#getPriceChangePercentage()} and {@link Product#hasPriceChanged()} as the price monitor
+ * calls them for every changed row, over a pool of products with realistic CLP prices (two decimals,
+ * mostly small increases and discounts). The score is per product.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceChangePercentageBenchmark {
+
+    private static final int POOL = 4096;
+
+    private Product[] products;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        products = new Product[POOL];
+        for (int i = 0; i < POOL; i++) {
+            long previousCents = 500_00 + random.nextInt(50_000_00);
+            long cents = previousCents + (random.nextInt(41) - 20) * previousCents / 100;
+            Product product = new Product();
+            product.setId((long) i);
+            product.setPreviousPrice(BigDecimal.valueOf(previousCents, 2));
+            product.setPrice(BigDecimal.valueOf(cents, 2));
+            products[i] = product;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POOL)
+    public void percentage(Blackhole blackhole) {
+        for (Product product : products) {
+            blackhole.consume(product.getPriceChangePercentage());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POOL)
+    public void changedAndPercentage(Blackhole blackhole) {
+        for (Product product : products) {
+            if (product.hasPriceChanged()) {
+                blackhole.consume(product.getPriceChangePercentage());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PriceChangePercentageBenchmark.class.getSimpleName()).build()).run();
+    }
+}
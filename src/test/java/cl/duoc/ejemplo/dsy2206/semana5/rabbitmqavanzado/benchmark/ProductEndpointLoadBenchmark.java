@@ -0,0 +1,182 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.benchmark;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.RabbitmqavanzadoApplication;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Load test of the blocking {@code ProductController} paths on platform threads versus
+ * {@code spring.threads.virtual.enabled=true}.
+ * <p>
+ * Each run starts the application on H2 with the product cache off, a Tomcat pool of
+ * {@code tomcatThreads} and a connection pool of {@code connections}. Every JDBC connection checkout
+ * holds the connection for {@code latencyMs} to stand in for an Oracle round trip. {@code clients}
+ * concurrent callers then alternate {@code /products/{id}} and keyset page requests. With platform
+ * threads throughput is capped near tomcatThreads / latency; with virtual threads only the connection
+ * pool bounds it.
+ * <p>
+ * Run from the IDE or with {@code java -cp target/classes:target/test-classes:<test classpath>
+ * ...ProductEndpointLoadBenchmark [clients] [requestsPerClient] [latencyMs] [tomcatThreads] [connections]}.
+ */
+public class ProductEndpointLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = intArg(args, 0, 400);
+        int requestsPerClient = intArg(args, 1, 50);
+        int latencyMs = intArg(args, 2, 20);
+        int tomcatThreads = intArg(args, 3, 50);
+        int connections = intArg(args, 4, 200);
+        System.setProperty("benchmark.jdbc-latency-ms", Integer.toString(latencyMs));
+
+        System.out.printf("%d clients x %d requests, %d ms per JDBC checkout, %d Tomcat threads, %d connections%n",
+                clients, requestsPerClient, latencyMs, tomcatThreads, connections);
+        for (boolean virtual : new boolean[] {false, true}) {
+            run(virtual, clients, requestsPerClient, tomcatThreads, connections);
+        }
+    }
+
+    private static void run(boolean virtual, int clients, int requestsPerClient, int tomcatThreads, int connections) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(RabbitmqavanzadoApplication.class, SlowJdbc.class)
+                .profiles("h2")
+                .run("--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtual,
+                        "--server.tomcat.threads.max=" + tomcatThreads,
+                        "--server.tomcat.accept-count=" + (clients * 2),
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + virtual + ";DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.hikari.maximum-pool-size=" + connections,
+                        "--spring.datasource.hikari.minimum-idle=" + connections,
+                        "--product.cache.enabled=false",
+                        "--stock.monitoring.enabled=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.cl.duoc=WARN",
+                        "--logging.level.org.springframework.web=WARN",
+                        "--logging.level.org.springframework.amqp=WARN")) {
+            List<Long> ids = context.getBean(ProductRepository.class)
+                    .saveAll(IntStream.range(0, 1_000).mapToObj(ProductEndpointLoadBenchmark::product).toList())
+                    .stream().map(Product::getId).toList();
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/monitoring";
+
+            try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+                 HttpClient client = HttpClient.newBuilder().executor(callers).build()) {
+                // Warm-up: class loading, JIT and pool fill
+                drive(client, callers, base, ids, clients, 5);
+                long start = System.nanoTime();
+                long[] latencies = drive(client, callers, base, ids, clients, requestsPerClient);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                Arrays.sort(latencies);
+                System.out.printf("%-9s %8.0f req/s   p50 %6.1f ms   p99 %6.1f ms", virtual ? "virtual" : "platform",
+                        latencies.length / seconds, percentile(latencies, 0.50), percentile(latencies, 0.99));
+                Timer pinned = context.getBean(MeterRegistry.class).find("jvm.threads.virtual.pinned").tag("source", "oracle-jdbc").timer();
+                Timer otherPinned = context.getBean(MeterRegistry.class).find("jvm.threads.virtual.pinned").tag("source", "other").timer();
+                if (pinned != null && otherPinned != null) {
+                    System.out.printf("   pinned: %d jdbc / %d other", pinned.count(), otherPinned.count());
+                }
+                System.out.println();
+            }
+        }
+    }
+
+    private static long[] drive(HttpClient client, ExecutorService callers, String base, List<Long> ids,
+                                int clients, int requestsPerClient) throws Exception {
+        List<Future<long[]>> results = IntStream.range(0, clients)
+                .mapToObj(c -> callers.submit(() -> {
+                    long[] latencies = new long[requestsPerClient];
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        long id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                        String path = i % 2 == 0 ? "/products/" + id : "/products/active?limit=50&after=" + id;
+                        long start = System.nanoTime();
+                        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(base + path)).build(),
+                                HttpResponse.BodyHandlers.discarding());
+                        latencies[i] = System.nanoTime() - start;
+                        if (response.statusCode() != 200) {
+                            throw new IllegalStateException("HTTP " + response.statusCode() + " for " + path);
+                        }
+                    }
+                    return latencies;
+                }))
+                .toList();
+        long[] all = new long[clients * requestsPerClient];
+        int offset = 0;
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            System.arraycopy(latencies, 0, all, offset, latencies.length);
+            offset += latencies.length;
+        }
+        return all;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(percentile * sorted.length))] / 1e6;
+    }
+
+    private static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    private static Product product(int i) {
+        Product product = new Product();
+        product.setName("p" + i);
+        product.setCategory("cat" + (i % 20));
+        product.setQuantity(100);
+        product.setActive(true);
+        product.setPrice(new BigDecimal("1990.00"));
+        return product;
+    }
+
+    /**
+     * Holds every checked-out connection for {@code benchmark.jdbc-latency-ms} before handing it out.
+     */
+    @TestConfiguration
+    static class SlowJdbc {
+
+        @Bean
+        static BeanPostProcessor slowDataSource() {
+            long latencyMs = Long.getLong("benchmark.jdbc-latency-ms", 20);
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource dataSource)) {
+                        return bean;
+                    }
+                    return Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] {DataSource.class},
+                            (proxy, method, methodArgs) -> {
+                                try {
+                                    Object result = method.invoke(dataSource, methodArgs);
+                                    if (result instanceof Connection) {
+                                        Thread.sleep(latencyMs);
+                                    }
+                                    return result;
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                            });
+                }
+            };
+        }
+    }
+}
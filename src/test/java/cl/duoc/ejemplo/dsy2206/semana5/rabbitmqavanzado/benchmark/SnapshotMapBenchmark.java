@@ -0,0 +1,97 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.benchmark;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.LongIntSnapshotMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares one monitoring poll worth of snapshot updates on the previous {@code ConcurrentHashMap<Long, Integer>}
+ * against {@link LongIntSnapshotMap}. About 1% of the products change quantity on each poll.
+ * The retained size per entry of both structures is printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotMapBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int products;
+
+    private long[] productIds;
+    private int[][] quantities;
+    private int poll;
+
+    private Map<Long, Integer> concurrentHashMap;
+    private LongIntSnapshotMap snapshotMap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        productIds = new long[products];
+        quantities = new int[2][products];
+        concurrentHashMap = new ConcurrentHashMap<>();
+        snapshotMap = new LongIntSnapshotMap(products);
+        for (int i = 0; i < products; i++) {
+            productIds[i] = i + 1L;
+            quantities[0][i] = 1_000 + (i % 500);
+            quantities[1][i] = i % 100 == 0 ? quantities[0][i] - 1 : quantities[0][i];
+            concurrentHashMap.put(productIds[i], quantities[0][i]);
+            snapshotMap.update(productIds[i], quantities[0][i]);
+        }
+        System.out.printf("%n[%d products] ConcurrentHashMap: %.1f bytes/entry, LongIntSnapshotMap: %.1f bytes/entry%n",
+                products,
+                GraphLayout.parseInstance(concurrentHashMap).totalSize() / (double) products,
+                GraphLayout.parseInstance(snapshotMap).totalSize() / (double) products);
+    }
+
+    @Benchmark
+    public void concurrentHashMapPoll(Blackhole blackhole) {
+        int[] current = quantities[poll++ & 1];
+        for (int i = 0; i < products; i++) {
+            Long productId = productIds[i];
+            int currentQuantity = current[i];
+            Integer lastQuantity = concurrentHashMap.get(productId);
+            if (lastQuantity != null && currentQuantity < lastQuantity) {
+                blackhole.consume(lastQuantity - currentQuantity);
+            }
+            concurrentHashMap.put(productId, currentQuantity);
+        }
+    }
+
+    @Benchmark
+    public void snapshotMapPoll(Blackhole blackhole) {
+        int[] current = quantities[poll++ & 1];
+        for (int i = 0; i < products; i++) {
+            int currentQuantity = current[i];
+            int lastQuantity = snapshotMap.update(productIds[i], currentQuantity);
+            if (lastQuantity != LongIntSnapshotMap.NO_VALUE && currentQuantity < lastQuantity) {
+                blackhole.consume(lastQuantity - currentQuantity);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SnapshotMapBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,114 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.benchmark;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductShardSlice;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ProductCache;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeMonitoringService;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeNotificationService;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockScanWatermarkStore;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockSnapshotCheckpointStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.mockito.ArgumentMatchers;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * One full {@link StockChangeMonitoringService#monitorStockChanges()} poll over a synthetic in-memory
+ * catalog: the repository returns a stream over prebuilt rows and the notification service only counts
+ * events, so the measurement is the diff loop (snapshot update, event construction) without Oracle or
+ * RabbitMQ. Between polls 1% of the products sell one unit.
+ * <p>
+ * The 10M catalog needs roughly 2 GB of heap, hence the larger fork heap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StockPollBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    private int products;
+
+    private ProductoDTO[] rows;
+    private StockChangeMonitoringService monitoringService;
+    private final LongAdder events = new LongAdder();
+    private int round;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        // Shared value objects keep the 10M catalog affordable
+        BigDecimal price = new BigDecimal("1990.00");
+        LocalDateTime updated = LocalDateTime.of(2025, 6, 1, 12, 0);
+        rows = new ProductoDTO[products];
+        for (int i = 0; i < products; i++) {
+            rows[i] = new ProductoDTO((long) i + 1, "p", null, 1_000_000, "cat" + (i % 20), true, price, updated, null, 0L);
+        }
+
+        ProductRepository repository = mock(ProductRepository.class);
+        when(repository.streamActiveProductStock(ArgumentMatchers.<ProductShardSlice>any(), anyInt()))
+                .thenAnswer(invocation -> Arrays.stream(rows));
+        StockChangeNotificationService notifications = mock(StockChangeNotificationService.class);
+        when(notifications.isNotificationsEnabled()).thenReturn(true);
+        doAnswer(invocation -> {
+            events.increment();
+            return null;
+        }).when(notifications).notifyStockChange(any());
+        ObjectProvider<?> absent = mock(ObjectProvider.class);
+
+        monitoringService = new StockChangeMonitoringService(repository, notifications,
+                mock(StockScanWatermarkStore.class), mock(StockSnapshotCheckpointStore.class),
+                new ProductCache(repository, new SimpleMeterRegistry(), false, 0, 0), new SimpleMeterRegistry(),
+                mock(PlatformTransactionManager.class), (ObjectProvider) absent, (ObjectProvider) absent,
+                products, 1, 0, 50);
+        // Baseline poll
+        monitoringService.monitorStockChanges();
+    }
+
+    @Setup(Level.Invocation)
+    public void sellOnePercent() {
+        for (int i = round++ % 100; i < products; i += 100) {
+            rows[i].setQuantity(rows[i].getQuantity() - 1);
+        }
+    }
+
+    @Benchmark
+    public long poll() {
+        monitoringService.monitorStockChanges();
+        return events.sum();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StockPollBenchmark.class.getSimpleName()).build()).run();
+    }
+}
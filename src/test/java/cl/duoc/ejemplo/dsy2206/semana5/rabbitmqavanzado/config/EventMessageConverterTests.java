@@ -0,0 +1,127 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventMessageConverterTests {
+
+	private final EventMessageConverter binary = new EventMessageConverter(new Jackson2JsonMessageConverter(),
+			new CompactBinaryMessageConverter(), true);
+	private final EventMessageConverter json = new EventMessageConverter(new Jackson2JsonMessageConverter(),
+			new CompactBinaryMessageConverter(), false);
+
+	@Test
+	void stockEventRoundTripsThroughBinaryFormat() {
+		StockChangeEventDTO event = new StockChangeEventDTO(123456L, "Café molido 500g", "Almacén", 3, 97,
+				new BigDecimal("14970.00"), LocalDateTime.of(2025, 6, 1, 12, 30, 15, 123_456_789));
+
+		Message message = binary.toMessage(event, new MessageProperties());
+
+		assertEquals(CompactBinaryMessageConverter.CONTENT_TYPE, message.getMessageProperties().getContentType());
+		assertEquals(event, binary.fromMessage(message));
+		assertEquals(event, json.fromMessage(message));
+	}
+
+	@Test
+	void priceEventRoundTripsWithNullsAndWideDecimals() {
+		PriceChangeEventDTO event = PriceChangeEventDTO.builder()
+				.productId(-1L)
+				.oldPrice(new BigDecimal("123456789012345678901234.5678"))
+				.newPrice(new BigDecimal("-0.01"))
+				.changePercentage(-12.34)
+				.changeType("DECREASE")
+				.changeTimestamp(LocalDateTime.of(1969, 12, 31, 23, 59, 59))
+				.build();
+
+		Message message = binary.toMessage(event, new MessageProperties());
+
+		assertEquals(event, binary.fromMessage(message));
+	}
+
+	@Test
+	void truncatedBinaryBodiesFailAsConversionErrors() {
+		PriceChangeEventDTO event = PriceChangeEventDTO.builder()
+				.productId(42L)
+				.productName("Café molido 500g")
+				.oldPrice(new BigDecimal("123456789012345678901234.5678"))
+				.newPrice(new BigDecimal("990.00"))
+				.changePercentage(-12.34)
+				.changeType("DECREASE")
+				.changeTimestamp(LocalDateTime.of(2025, 6, 1, 12, 30))
+				.changeReason("promo")
+				.build();
+		Message message = binary.toMessage(event, new MessageProperties());
+		byte[] body = message.getBody();
+
+		// Every prefix, down to the empty body, ends inside some field
+		for (int length = 0; length < body.length; length++) {
+			Message truncated = new Message(Arrays.copyOf(body, length), message.getMessageProperties());
+			assertThrows(MessageConversionException.class, () -> binary.fromMessage(truncated), "prefix of " + length);
+		}
+	}
+
+	@Test
+	void corruptBinaryBodiesDecodeOrFailAsConversionErrors() {
+		StockChangeEventDTO event = new StockChangeEventDTO(123456L, "Café molido 500g", "Almacén", 3, 97,
+				new BigDecimal("14970.00"), LocalDateTime.of(2025, 6, 1, 12, 30, 15));
+		Message message = binary.toMessage(event, new MessageProperties());
+		Random random = new Random(11);
+
+		for (int i = 0; i < 10_000; i++) {
+			byte[] corrupt = message.getBody().clone();
+			corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+			corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+			try {
+				binary.fromMessage(new Message(corrupt, message.getMessageProperties()));
+			} catch (MessageConversionException expected) {
+				// Counted and skipped by the consumers
+			}
+		}
+	}
+
+	@Test
+	void jsonStaysTheDefaultAndIsStillDecoded() {
+		StockChangeEventDTO event = new StockChangeEventDTO(7L, "Arroz", "Granos", 1, 9,
+				new BigDecimal("990.00"), LocalDateTime.of(2025, 6, 1, 8, 0));
+
+		Message message = json.toMessage(event, new MessageProperties());
+
+		assertEquals(MessageProperties.CONTENT_TYPE_JSON, message.getMessageProperties().getContentType());
+		assertEquals(event, binary.fromMessage(message));
+	}
+
+	@Test
+	void otherPayloadsAreAlwaysJson() {
+		Message message = binary.toMessage(Map.of("texto", "hola"), new MessageProperties());
+
+		assertEquals(MessageProperties.CONTENT_TYPE_JSON, message.getMessageProperties().getContentType());
+		assertInstanceOf(Map.class, binary.fromMessage(message));
+	}
+
+	@Test
+	void binaryPayloadIsSmallerThanJson() {
+		StockChangeEventDTO event = new StockChangeEventDTO(123456L, "Café molido 500g", "Almacén", 3, 97,
+				new BigDecimal("14970.00"), LocalDateTime.of(2025, 6, 1, 12, 30, 15));
+
+		int binarySize = binary.toMessage(event, new MessageProperties()).getBody().length;
+		int jsonSize = json.toMessage(event, new MessageProperties()).getBody().length;
+
+		assertTrue(binarySize * 3 < jsonSize, binarySize + " vs " + jsonSize);
+	}
+}
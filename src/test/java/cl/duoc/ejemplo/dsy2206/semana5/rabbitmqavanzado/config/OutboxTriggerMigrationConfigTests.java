@@ -0,0 +1,34 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import org.flywaydb.core.api.Location;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxTriggerMigrationConfigTests {
+
+	@Test
+	void addsTheOutboxLocationOfTheConnectedVendor() {
+		FluentConfiguration configuration = new FluentConfiguration()
+				.dataSource("jdbc:h2:mem:outboxlocation", "sa", "")
+				.locations("classpath:db/migration/common", "classpath:db/migration/h2");
+
+		new OutboxTriggerMigrationConfig().outboxTriggerLocation().customize(configuration);
+
+		assertEquals(List.of("classpath:db/migration/common", "classpath:db/migration/h2", "classpath:db/migration/outbox/h2"),
+				Arrays.stream(configuration.getLocations()).map(Location::getDescriptor).toList());
+	}
+
+	@Test
+	void triggerIsOnlyInTheOutboxLocation() {
+		assertTrue(new ClassPathResource("db/migration/outbox/oracle/afterMigrate__product_change_log_trigger.sql").exists());
+		assertFalse(new ClassPathResource("db/migration/oracle/V4__product_change_log_trigger.sql").exists());
+	}
+}
@@ -0,0 +1,116 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.controller;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:productapi;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProductControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private List<Long> activeIds;
+
+	@BeforeEach
+	void setUp() {
+		productRepository.deleteAll();
+		List<Product> saved = productRepository.saveAll(IntStream.range(0, 25)
+				.mapToObj(i -> product("p" + i, i % 5 != 0))
+				.toList());
+		activeIds = saved.stream().filter(Product::isActive).map(Product::getId).toList();
+	}
+
+	@Test
+	void keysetPagesCoverEveryActiveProductOnce() throws Exception {
+		List<Long> ids = new ArrayList<>();
+		String cursor = "0";
+		int pages = 0;
+		while (cursor != null) {
+			String body = mockMvc.perform(get("/api/monitoring/products/active").param("limit", "7").param("after", cursor))
+					.andExpect(status().isOk())
+					.andReturn().getResponse().getContentAsString();
+			JsonNode page = objectMapper.readTree(body);
+			page.get("items").forEach(item -> {
+				ids.add(item.get("id").asLong());
+				assertFalse(item.has("description"));
+			});
+			cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+			pages++;
+		}
+		assertEquals(activeIds, ids);
+		assertEquals(3, pages);
+	}
+
+	@Test
+	void streamWritesOneJsonObjectPerLine() throws Exception {
+		MvcResult started = mockMvc.perform(get("/api/monitoring/products/active/stream"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		String body = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+
+		assertTrue(body.endsWith("\n"));
+		String[] lines = body.split("\n");
+		List<Long> ids = new ArrayList<>();
+		for (String line : lines) {
+			JsonNode row = objectMapper.readTree(line);
+			ids.add(row.get("id").asLong());
+			assertFalse(row.has("version"));
+		}
+		assertEquals(activeIds, ids);
+	}
+
+	@Test
+	void singleProductIsReadAsSummary() throws Exception {
+		String body = mockMvc.perform(get("/api/monitoring/products/{id}", activeIds.get(0)))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		JsonNode product = objectMapper.readTree(body);
+		assertEquals(activeIds.get(0), product.get("id").asLong());
+		assertTrue(product.get("active").asBoolean());
+		assertFalse(product.has("description"));
+	}
+
+	private static Product product(String name, boolean active) {
+		Product product = new Product();
+		product.setName(name);
+		product.setDescription("Descripcion de " + name);
+		product.setCategory("General");
+		product.setQuantity(10);
+		product.setActive(active);
+		product.setPrice(new BigDecimal("1500.00"));
+		return product;
+	}
+}
@@ -0,0 +1,116 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the migrations against H2 and checks, through EXPLAIN, that the SQL Hibernate generates for the
+ * repository's range, keyset and category queries is answered from the migration indexes. The statements
+ * are captured with a {@link StatementInspector}, so a query edited away from its index fails here.
+ * The Oracle-only function-based UPPER(NAME) index has no H2 equivalent and is not covered here.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+		"spring.datasource.url=jdbc:h2:mem:migrations;DB_CLOSE_DELAY=-1",
+		"spring.jpa.properties.hibernate.session_factory.statement_inspector="
+				+ "cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductQueryIndexTests$CapturingStatementInspector"
+})
+@ActiveProfiles("h2")
+class ProductQueryIndexTests {
+
+	private static final LocalDateTime FROM = LocalDateTime.of(2025, 1, 2, 8, 0);
+	private static final LocalDateTime TO = FROM.plusHours(1);
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@BeforeEach
+	void fillCatalog() {
+		jdbcTemplate.update("DELETE FROM PRODUCT");
+		LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+		List<Object[]> rows = IntStream.range(0, 2_000)
+				.mapToObj(i -> new Object[] {"p" + i, i % 40 + 1, "cat" + (i % 50), i % 10 != 0, Timestamp.valueOf(start.plusMinutes(i))})
+				.toList();
+		jdbcTemplate.batchUpdate("INSERT INTO PRODUCT (NAME, QUANTITY, CATEGORY, ACTIVE, PRICE, LAST_PRICE_UPDATE) "
+				+ "VALUES (?, ?, ?, ?, 1000.00, ?)", rows);
+		jdbcTemplate.execute("ANALYZE");
+	}
+
+	@Test
+	void migrationsAreApplied() {
+		Integer applied = jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM \"flyway_schema_history\" WHERE \"success\" = TRUE AND \"version\" IS NOT NULL", Integer.class);
+		// V1, V2, V3, V5 and V7; V6 is Oracle-only and there is no V4
+		assertEquals(5, applied);
+	}
+
+	@Test
+	void updatedAfterRangeUsesLastPriceUpdateIndex() {
+		assertUsesIndex("IX_PRODUCT_LAST_PRICE_UPDATE",
+				generatedSql(() -> productRepository.findProductsUpdatedAfter(FROM)), FROM);
+		assertUsesIndex("IX_PRODUCT_LAST_PRICE_UPDATE",
+				generatedSql(() -> productRepository.countProductsUpdatedAfter(FROM)), FROM);
+		assertUsesIndex("IX_PRODUCT_LAST_PRICE_UPDATE",
+				generatedSql(() -> productRepository.findProductsWithPriceChangesInRange(FROM, TO)), FROM, TO);
+	}
+
+	@Test
+	void keysetScanUsesLastPriceUpdateIndex() {
+		String sql = generatedSql(() -> productRepository.findActiveProductPricesChangedAfter(FROM, 100L, PageRequest.of(0, 100)));
+
+		assertUsesIndex("IX_PRODUCT_LAST_PRICE_UPDATE", sql, FROM, FROM, 100L, 100);
+	}
+
+	@Test
+	void activeCategoryListingUsesCompositeIndex() {
+		assertUsesIndex("IX_PRODUCT_ACTIVE_CATEGORY",
+				generatedSql(() -> productRepository.findActiveProductsByCategory("cat7")), "cat7");
+		assertUsesIndex("IX_PRODUCT_ACTIVE_CATEGORY",
+				generatedSql(() -> productRepository.findActiveProductSummariesByCategory("cat7")), "cat7");
+	}
+
+	// The single statement the query sends, with its ? placeholders
+	private static String generatedSql(Runnable query) {
+		List<String> statements = CapturingStatementInspector.STATEMENTS.get();
+		statements.clear();
+		query.run();
+		assertEquals(1, statements.size(), () -> "Expected one statement, got " + statements);
+		return statements.get(0);
+	}
+
+	private void assertUsesIndex(String index, String sql, Object... parameters) {
+		String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, parameters);
+		assertTrue(plan.contains(index), () -> "Expected " + index + " in plan:\n" + plan);
+	}
+
+	/**
+	 * Records the SQL Hibernate prepares on the calling thread; the scheduled monitors query on their own threads.
+	 */
+	public static class CapturingStatementInspector implements StatementInspector {
+
+		static final ThreadLocal<List<String>> STATEMENTS = ThreadLocal.withInitial(ArrayList::new);
+
+		@Override
+		public String inspect(String sql) {
+			STATEMENTS.get().add(sql);
+			return sql;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.CompactBinaryMessageConverter;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.EventMessageConverter;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChangeEventBatchListenerTests {
+
+	private final EventMessageConverter json = new EventMessageConverter(new Jackson2JsonMessageConverter(),
+			new CompactBinaryMessageConverter(), false);
+	private final EventMessageConverter binary = new EventMessageConverter(new Jackson2JsonMessageConverter(),
+			new CompactBinaryMessageConverter(), true);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final ChangeEventBatchListener listener = new ChangeEventBatchListener(json, meterRegistry);
+
+	@Test
+	void stockBatchIsSummarizedPerProduct() {
+		ChangeEventBatchListener.StockBatchSummary summary = ChangeEventBatchListener.summarizeStock(List.of(
+				stock(1L, 3, 97, "3000.00"),
+				stock(2L, 1, 9, "500.00"),
+				stock(1L, 2, 95, "2000.00")));
+
+		assertEquals(2, summary.products().size());
+		assertEquals(new ChangeEventBatchListener.ProductStockChange(1L, 5, 95, new BigDecimal("5000.00")),
+				summary.products().get(1L));
+		assertEquals(6, summary.unitsSold());
+		assertEquals(new BigDecimal("5500.00"), summary.salesTotal());
+	}
+
+	@Test
+	void priceBatchKeepsFirstAndLastPrice() {
+		ChangeEventBatchListener.PriceBatchSummary summary = ChangeEventBatchListener.summarizePrices(List.of(
+				price(1L, "100.00", "110.00", "INCREASE", 10.0),
+				price(1L, "110.00", "88.00", "DECREASE", -20.0),
+				price(2L, "50.00", "55.00", "INCREASE", 10.0)));
+
+		assertEquals(new ChangeEventBatchListener.ProductPriceChange(1L, new BigDecimal("100.00"), new BigDecimal("88.00"), 2),
+				summary.products().get(1L));
+		assertEquals(2, summary.increases());
+		assertEquals(1, summary.decreases());
+		assertEquals(-20.0, summary.largestChangePercentage());
+	}
+
+	@Test
+	void mixedFormatsAreDecodedAndUndecodableMessagesSkipped() {
+		Message garbage = new Message("not json".getBytes(StandardCharsets.UTF_8), jsonProperties());
+		Message complete = binary.toMessage(stock(3L, 2, 8, "1000.00"), new MessageProperties());
+		Message truncated = new Message(Arrays.copyOf(complete.getBody(), complete.getBody().length / 2),
+				complete.getMessageProperties());
+
+		listener.onStockChanges(List.of(
+				json.toMessage(stock(1L, 3, 97, "3000.00"), new MessageProperties()),
+				binary.toMessage(stock(2L, 1, 9, "500.00"), new MessageProperties()),
+				garbage,
+				truncated));
+
+		assertEquals(2.0, meterRegistry.get("messaging.batch.size").tag("queue", "stock-changes").summary().totalAmount());
+		assertEquals(2.0, meterRegistry.get("messaging.batch.undecodable").tag("queue", "stock-changes").counter().count());
+	}
+
+	private static MessageProperties jsonProperties() {
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+		return properties;
+	}
+
+	private static StockChangeEventDTO stock(Long productId, int sold, int quantity, String saleTotal) {
+		return new StockChangeEventDTO(productId, "p" + productId, "cat", sold, quantity, new BigDecimal(saleTotal),
+				LocalDateTime.of(2025, 6, 1, 12, 0));
+	}
+
+	private static PriceChangeEventDTO price(Long productId, String oldPrice, String newPrice, String type, double percentage) {
+		return PriceChangeEventDTO.builder()
+				.productId(productId)
+				.oldPrice(new BigDecimal(oldPrice))
+				.newPrice(new BigDecimal(newPrice))
+				.changeType(type)
+				.changePercentage(percentage)
+				.build();
+	}
+}
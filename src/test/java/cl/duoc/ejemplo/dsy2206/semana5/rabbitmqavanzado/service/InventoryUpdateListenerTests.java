@@ -0,0 +1,108 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.InventoryUpdateDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockShardCoordinatorTests.RecordingNotificationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pushed inventory updates are emitted immediately, and the reconciliation poll neither rolls the
+ * snapshot back to an older row nor emits the pushed sale a second time.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+		"spring.datasource.url=jdbc:h2:mem:inventorypush;DB_CLOSE_DELAY=-1",
+		"inventory.push.enabled=true"
+})
+@ActiveProfiles("h2")
+@Import(StockShardCoordinatorTests.RecordingNotifications.class)
+class InventoryUpdateListenerTests {
+
+	@Autowired
+	private InventoryUpdateListener listener;
+
+	@Autowired
+	private StockChangeMonitoringService monitoringService;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private RecordingNotificationService notifications;
+
+	@Test
+	void pushedSaleIsEmittedOnceAndReconciledByThePoll() throws InterruptedException {
+		Product product = productRepository.save(product("Teclado", 100));
+		monitoringService.monitorStockChanges();
+		assertTrue(events().isEmpty());
+
+		listener.onInventoryUpdate(InventoryUpdateDTO.builder()
+				.productId(product.getId())
+				.productName("Teclado")
+				.productCategory("Perifericos")
+				.quantityDelta(-3)
+				.unitPrice(new BigDecimal("1000.00"))
+				.movementType("SALE")
+				.occurredAt(LocalDateTime.now())
+				.build());
+		assertEquals(1, events().size());
+		StockChangeEventDTO pushed = events().get(0);
+		assertEquals(3, pushed.getQuantityChanged());
+		assertEquals(97, pushed.getNewQuantity());
+		assertEquals(0, new BigDecimal("3000.00").compareTo(pushed.getSaleTotal()));
+
+		// The row still predates the push: no rollback to 100, so no duplicate once the row catches up
+		monitoringService.monitorStockChanges();
+		// Not even after a price-only update moves LAST_PRICE_UPDATE past the push
+		Thread.sleep(5);
+		product.updatePrice(new BigDecimal("1100.00"));
+		product = productRepository.save(product);
+		monitoringService.monitorStockChanges();
+		assertEquals(1, events().size());
+		product.setQuantity(97);
+		product = productRepository.save(product);
+		monitoringService.monitorStockChanges();
+		assertEquals(1, events().size());
+
+		// Back to poll-driven detection for changes that were never pushed
+		product.setQuantity(90);
+		productRepository.save(product);
+		monitoringService.monitorStockChanges();
+		assertEquals(2, events().size());
+		assertEquals(7, events().get(1).getQuantityChanged());
+	}
+
+	@Test
+	void updateWithoutProductIsRejected() {
+		InventoryUpdateDTO update = InventoryUpdateDTO.builder().quantityDelta(-1).build();
+		assertThrows(AmqpRejectAndDontRequeueException.class, () -> listener.onInventoryUpdate(update));
+	}
+
+	private List<StockChangeEventDTO> events() {
+		return notifications.events;
+	}
+
+	private static Product product(String name, int quantity) {
+		Product product = new Product();
+		product.setName(name);
+		product.setCategory("Perifericos");
+		product.setQuantity(quantity);
+		product.setActive(true);
+		product.setPrice(new BigDecimal("1000.00"));
+		return product;
+	}
+}
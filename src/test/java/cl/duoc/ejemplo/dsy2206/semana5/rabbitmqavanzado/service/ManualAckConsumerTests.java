@@ -0,0 +1,145 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Out-of-order completions are acknowledged cumulatively in delivery-tag order, and a failed delivery
+ * is rejected on its own before any cumulative ack could cover it.
+ */
+class ManualAckConsumerTests {
+
+	private final List<String> frames = Collections.synchronizedList(new ArrayList<>());
+
+	@Test
+	void acksCumulativelyInDeliveryTagOrder() throws Exception {
+		Channel channel = recordingChannel();
+		ManualAckConsumer consumer = new ManualAckConsumer("test", 8, 10);
+		int messages = 500;
+		CountDownLatch processed = new CountDownLatch(messages);
+
+		for (long tag = 1; tag <= messages; tag++) {
+			consumer.dispatch(message(tag), channel, message -> {
+				sleepRandomly();
+				processed.countDown();
+			});
+		}
+		assertTrue(processed.await(10, TimeUnit.SECONDS));
+		consumer.shutdown(5000);
+
+		long previous = 0;
+		for (String frame : frames) {
+			assertTrue(frame.startsWith("ack "), frame);
+			long tag = Long.parseLong(frame.substring(4));
+			assertTrue(tag > previous, "acks must advance: " + frames);
+			previous = tag;
+		}
+		assertEquals(messages, previous);
+		assertTrue(frames.size() < messages, "expected cumulative acks, got " + frames.size());
+		assertEquals(0, consumer.getInFlightCount());
+	}
+
+	@Test
+	void rejectsFailedDeliveryBeforeAckingPastIt() throws Exception {
+		Channel channel = recordingChannel();
+		ManualAckConsumer consumer = new ManualAckConsumer("test", 4, 100);
+		CountDownLatch releaseFirst = new CountDownLatch(1);
+
+		consumer.dispatch(message(1), channel, message -> await(releaseFirst));
+		consumer.dispatch(message(2), channel, message -> {
+		});
+		consumer.dispatch(message(3), channel, message -> {
+			throw new IllegalStateException("boom");
+		});
+		consumer.dispatch(message(4), channel, message -> {
+		});
+		Thread.sleep(200);
+		assertTrue(frames.isEmpty(), "nothing may be acked while delivery 1 is in flight: " + frames);
+
+		releaseFirst.countDown();
+		consumer.shutdown(5000);
+
+		assertEquals(List.of("ack 2", "nack 3", "ack 4"), frames);
+	}
+
+	@Test
+	void interruptedDeliveriesAreLeftForRedeliveryNotRejected() throws Exception {
+		Channel channel = recordingChannel();
+		ManualAckConsumer consumer = new ManualAckConsumer("test", 2, 100);
+		CountDownLatch started = new CountDownLatch(2);
+
+		consumer.dispatch(message(1), channel, message -> {
+		});
+		// Like MensajeServiceImpl: the interrupted sleep is rethrown as an unchecked exception
+		for (long tag = 2; tag <= 3; tag++) {
+			consumer.dispatch(message(tag), channel, message -> {
+				started.countDown();
+				try {
+					Thread.sleep(60_000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("interrupted", e);
+				}
+			});
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		consumer.shutdown(100);
+		Thread.sleep(200);
+
+		assertEquals(List.of("ack 1"), frames);
+		assertEquals(2, consumer.getInFlightCount());
+	}
+
+	private Channel recordingChannel() throws Exception {
+		Channel channel = mock(Channel.class);
+		doAnswer(invocation -> {
+			assertTrue(invocation.<Boolean>getArgument(1), "acks must be cumulative");
+			frames.add("ack " + invocation.getArgument(0));
+			return null;
+		}).when(channel).basicAck(anyLong(), anyBoolean());
+		doAnswer(invocation -> {
+			frames.add("nack " + invocation.getArgument(0));
+			return null;
+		}).when(channel).basicNack(anyLong(), anyBoolean(), anyBoolean());
+		return channel;
+	}
+
+	private static Message message(long deliveryTag) {
+		MessageProperties properties = new MessageProperties();
+		properties.setDeliveryTag(deliveryTag);
+		return new Message(new byte[0], properties);
+	}
+
+	private static void sleepRandomly() {
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The keyset price scan against an in-memory table: the mocked repository applies the same
+ * (lastPriceUpdate, id) predicate, order and page size as the JPQL query.
+ */
+class PriceChangeMonitoringServiceTests {
+
+	private static final LocalDateTime T0 = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+	private final List<ProductoDTO> table = new ArrayList<>();
+	private final List<LocalDateTime> scanStarts = new ArrayList<>();
+	private final List<List<PriceChangeEventDTO>> batches = new ArrayList<>();
+	private PriceChangeMonitoringService monitoringService;
+
+	@BeforeEach
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	void setUp() {
+		ProductRepository repository = mock(ProductRepository.class);
+		when(repository.findActiveProductPricesChangedAfter(any(LocalDateTime.class), anyLong(), any(Pageable.class)))
+				.thenAnswer(invocation -> page(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+		PriceChangeNotificationService notifications = mock(PriceChangeNotificationService.class);
+		doAnswer(invocation -> {
+			List<PriceChangeEventDTO> batch = invocation.getArgument(0);
+			if (!batch.isEmpty()) {
+				batches.add(List.copyOf(batch));
+			}
+			return null;
+		}).when(notifications).notifyPriceChanges(any());
+		ObjectProvider absent = mock(ObjectProvider.class);
+
+		monitoringService = new PriceChangeMonitoringService(repository, notifications,
+				new ProductCache(repository, new SimpleMeterRegistry(), false, 0, 0), absent, 16);
+		ReflectionTestUtils.setField(monitoringService, "changeThreshold", 5.0);
+		ReflectionTestUtils.setField(monitoringService, "pageSize", 2);
+		ReflectionTestUtils.setField(monitoringService, "publishBatchSize", 2);
+		ReflectionTestUtils.setField(monitoringService, "overlapMs", 5000L);
+	}
+
+	@Test
+	void seedRecordsABaselineWithoutEmitting() {
+		table.add(row(1L, "1000.00", "800.00", T0));
+		table.add(row(2L, "500.00", null, T0));
+		table.add(row(3L, "90.00", "100.00", T0.plusSeconds(1)));
+
+		monitoringService.monitorPriceChanges();
+
+		assertTrue(batches.isEmpty());
+		assertEquals(true, monitoringService.getStatus().get("seeded"));
+		assertEquals(3, monitoringService.getStatus().get("trackedProducts"));
+	}
+
+	@Test
+	void firstSightingAfterTheSeedComparesAgainstPreviousPrice() {
+		table.add(row(1L, "1000.00", null, T0));
+		monitoringService.monitorPriceChanges();
+
+		table.add(row(2L, "1100.00", "1000.00", T0.plusMinutes(1)));
+		// No previous price: nothing to compare against yet
+		table.add(row(3L, "700.00", null, T0.plusMinutes(1)));
+		monitoringService.monitorPriceChanges();
+
+		PriceChangeEventDTO event = single();
+		assertEquals(2L, event.getProductId());
+		assertEquals(new BigDecimal("1000.00"), event.getOldPrice());
+		assertEquals(new BigDecimal("1100.00"), event.getNewPrice());
+		assertEquals(new BigDecimal("100.00"), event.getChangeAmount());
+		assertEquals(10.0, event.getChangePercentage());
+		assertEquals("INCREASE", event.getChangeType());
+	}
+
+	@Test
+	void changesBelowTheThresholdAreTrackedButNotPublished() {
+		table.add(row(1L, "1000.00", null, T0));
+		monitoringService.monitorPriceChanges();
+
+		reprice(1L, "1020.00", T0.plusMinutes(1));
+		monitoringService.monitorPriceChanges();
+		assertTrue(batches.isEmpty());
+		assertEquals(1L, monitoringService.getStatus().get("belowThresholdChanges"));
+
+		// Compared against the last price seen (1020), not the seed price
+		reprice(1L, "950.00", T0.plusMinutes(2));
+		monitoringService.monitorPriceChanges();
+		PriceChangeEventDTO event = single();
+		assertEquals(new BigDecimal("1020.00"), event.getOldPrice());
+		assertEquals(-6.86, event.getChangePercentage());
+		assertEquals("DECREASE", event.getChangeType());
+	}
+
+	@Test
+	void rowsReReadByTheOverlapAreNotEmittedAgain() {
+		table.add(row(1L, "1000.00", null, T0));
+		monitoringService.monitorPriceChanges();
+		reprice(1L, "1200.00", T0.plusMinutes(1));
+
+		monitoringService.monitorPriceChanges();
+		monitoringService.monitorPriceChanges();
+		monitoringService.monitorPriceChanges();
+
+		assertEquals(1, batches.size());
+		// The later scans did read the row again
+		assertEquals(T0.plusMinutes(1).minusSeconds(5), scanStarts.get(scanStarts.size() - 1));
+	}
+
+	@Test
+	void eventsArePublishedInBatchesOfPublishBatchSize() {
+		for (long id = 1; id <= 5; id++) {
+			table.add(row(id, "100.00", null, T0));
+		}
+		monitoringService.monitorPriceChanges();
+		for (long id = 1; id <= 5; id++) {
+			reprice(id, "150.00", T0.plusMinutes(1));
+		}
+
+		monitoringService.monitorPriceChanges();
+
+		assertEquals(List.of(2, 2, 1), batches.stream().map(List::size).toList());
+		assertEquals(List.of(1L, 2L, 3L, 4L, 5L),
+				batches.stream().flatMap(List::stream).map(PriceChangeEventDTO::getProductId).toList());
+	}
+
+	@Test
+	void quietScansDoNotMoveTheStartBack() {
+		table.add(row(1L, "1000.00", null, T0));
+		monitoringService.monitorPriceChanges();
+		// The newest row is deactivated, so nothing comes back from the overlap window any more
+		table.clear();
+		for (int i = 0; i < 5; i++) {
+			monitoringService.monitorPriceChanges();
+		}
+
+		// Every scan starts overlap-ms behind the newest row ever read, not further back each time
+		List<LocalDateTime> scans = scanStarts.subList(1, scanStarts.size());
+		assertEquals(5, scans.size());
+		scans.forEach(start -> assertEquals(T0.minusSeconds(5), start));
+	}
+
+	private PriceChangeEventDTO single() {
+		assertEquals(1, batches.size());
+		assertEquals(1, batches.get(0).size());
+		return batches.get(0).get(0);
+	}
+
+	// A price update by the catalog writer: the replaced price goes to PREVIOUS_PRICE, LAST_PRICE_UPDATE moves
+	private void reprice(Long id, String price, LocalDateTime updated) {
+		ProductoDTO current = table.stream().filter(row -> row.getId().equals(id)).findFirst().orElseThrow();
+		table.remove(current);
+		table.add(row(id, price, current.getPrice().toPlainString(), updated));
+	}
+
+	private List<ProductoDTO> page(LocalDateTime timestamp, long lastId, Pageable pageable) {
+		if (lastId == 0L) {
+			scanStarts.add(timestamp);
+		}
+		return table.stream()
+				.filter(row -> row.getLastPriceUpdate().isAfter(timestamp)
+						|| (row.getLastPriceUpdate().isEqual(timestamp) && row.getId() > lastId))
+				.sorted(Comparator.comparing(ProductoDTO::getLastPriceUpdate).thenComparing(ProductoDTO::getId))
+				.limit(pageable.getPageSize())
+				.map(PriceChangeMonitoringServiceTests::copy)
+				.toList();
+	}
+
+	private static ProductoDTO row(Long id, String price, String previousPrice, LocalDateTime updated) {
+		return new ProductoDTO(id, "p" + id, "Bebidas", new BigDecimal(price),
+				previousPrice != null ? new BigDecimal(previousPrice) : null, updated);
+	}
+
+	private static ProductoDTO copy(ProductoDTO row) {
+		return row(row.getId(), row.getPrice().toPlainString(),
+				row.getPreviousPrice() != null ? row.getPreviousPrice().toPlainString() : null, row.getLastPriceUpdate());
+	}
+}
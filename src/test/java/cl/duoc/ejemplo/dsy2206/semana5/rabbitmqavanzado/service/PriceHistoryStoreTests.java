@@ -0,0 +1,144 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PricePointDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriceHistoryStoreTests {
+
+	private static final LocalDateTime T0 = LocalDateTime.now().withNano(0).minusDays(10);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void rangeAndLatestFollowEachProductsChain() throws IOException {
+		PriceHistoryStore store = open(4);
+		for (int i = 0; i < 10; i++) {
+			store.append(1L, T0.plusHours(i), 100_00 + i);
+			store.append(2L, T0.plusHours(i), 500_00 - i);
+		}
+
+		assertEquals(List.of(point(7, "100.07"), point(8, "100.08"), point(9, "100.09")), store.latest(1L, 3));
+		assertEquals(List.of(point(2, "499.98"), point(3, "499.97"), point(4, "499.96")),
+				store.range(2L, T0.plusHours(2), T0.plusHours(4), 100));
+		// Over the limit, the newest points in the range win
+		assertEquals(List.of(point(3, "100.03"), point(4, "100.04")), store.range(1L, T0, T0.plusHours(4), 2));
+		assertTrue(store.latest(3L, 10).isEmpty());
+		assertEquals(20, store.size());
+	}
+
+	@Test
+	void repeatedPricesAreNotRecordedAndTimeNeverGoesBack() throws IOException {
+		PriceHistoryStore store = open(16);
+
+		assertTrue(store.append(1L, T0, 1000_00));
+		assertFalse(store.append(1L, T0.plusMinutes(1), 1000_00));
+		assertTrue(store.append(1L, T0.minusDays(1), 900_00));
+
+		assertEquals(List.of(point(0, "1000.00"), point(0, "900.00")), store.latest(1L, 10));
+	}
+
+	@Test
+	void reopenedStoreRebuildsTheChains() throws IOException {
+		PriceHistoryStore store = open(3);
+		for (int i = 0; i < 8; i++) {
+			store.append(i % 2, T0.plusMinutes(i), 1_00 * (i + 1));
+		}
+		store.close();
+
+		PriceHistoryStore reopened = open(3);
+		assertEquals(8, reopened.size());
+		assertEquals(List.of(new BigDecimal("1.00"), new BigDecimal("3.00"), new BigDecimal("5.00"), new BigDecimal("7.00")),
+				reopened.latest(0L, 10).stream().map(PricePointDTO::getPrice).toList());
+		assertTrue(reopened.append(1L, T0.plusMinutes(9), 99_00));
+		assertEquals(new BigDecimal("99.00"), reopened.latest(1L, 1).get(0).getPrice());
+		assertEquals(9, reopened.size());
+	}
+
+	@Test
+	void expiredSegmentsAreDroppedWhenANewOneStarts() throws IOException {
+		PriceHistoryStore store = new PriceHistoryStore(directory.toString(), 2, Duration.ofDays(1));
+		store.open();
+		store.append(1L, T0, 1_00);
+		store.append(1L, T0.plusMinutes(1), 2_00);
+		store.append(1L, LocalDateTime.now(), 3_00);
+
+		assertEquals(1, segmentFiles());
+		assertEquals(1, store.size());
+		assertEquals(List.of(new BigDecimal("3.00")), store.latest(1L, 10).stream().map(PricePointDTO::getPrice).toList());
+	}
+
+	@Test
+	void chainsKeepWorkingPastTheIntRange() throws IOException {
+		PriceHistoryStore store = open(4);
+		store.append(1L, T0, 1_00);
+		store.append(2L, T0, 2_00);
+		store.close();
+		rebaseFirstSegment(Integer.MAX_VALUE - 1L);
+
+		PriceHistoryStore reopened = open(4);
+		for (int i = 1; i <= 6; i++) {
+			reopened.append(1L, T0.plusHours(i), 1_00 + i);
+		}
+
+		assertEquals(8, reopened.size());
+		assertEquals(List.of(point(0, "1.00"), point(1, "1.01"), point(2, "1.02"), point(3, "1.03"),
+				point(4, "1.04"), point(5, "1.05"), point(6, "1.06")), reopened.latest(1L, 10));
+		assertEquals(List.of(point(0, "2.00")), reopened.latest(2L, 10));
+	}
+
+	@Test
+	void appendFailsBeforeTheRecordNumberWraps() throws IOException {
+		PriceHistoryStore store = open(4);
+		store.append(1L, T0, 1_00);
+		store.close();
+		rebaseFirstSegment(Long.MAX_VALUE - 2);
+
+		PriceHistoryStore reopened = open(4);
+		assertTrue(reopened.append(1L, T0.plusHours(1), 2_00));
+		assertThrows(IllegalStateException.class, () -> reopened.append(1L, T0.plusHours(2), 3_00));
+		assertEquals(List.of(point(0, "1.00"), point(1, "2.00")), reopened.latest(1L, 10));
+	}
+
+	private PriceHistoryStore open(int segmentRecords) throws IOException {
+		PriceHistoryStore store = new PriceHistoryStore(directory.toString(), segmentRecords, Duration.ofDays(365));
+		store.open();
+		return store;
+	}
+
+	// Rewrites the first record number in the header of the only segment, as if that many records had expired
+	private void rebaseFirstSegment(long firstRecord) throws IOException {
+		try (Stream<Path> files = Files.list(directory);
+			 RandomAccessFile segment = new RandomAccessFile(files.filter(file -> file.toString().endsWith(".seg"))
+					 .findFirst().orElseThrow().toFile(), "rw")) {
+			segment.seek(8);
+			segment.writeLong(firstRecord);
+		}
+	}
+
+	private long segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.toString().endsWith(".seg")).count();
+		}
+	}
+
+	private static PricePointDTO point(int hours, String price) {
+		return new PricePointDTO(T0.plusHours(hours), new BigDecimal(price));
+	}
+}
@@ -0,0 +1,102 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductCacheTests {
+
+	private ProductRepository repository;
+	private SimpleMeterRegistry meterRegistry;
+	private ProductCache cache;
+
+	@BeforeEach
+	void setUp() {
+		repository = mock(ProductRepository.class);
+		meterRegistry = new SimpleMeterRegistry();
+		cache = new ProductCache(repository, meterRegistry, true, 3, 60_000);
+	}
+
+	@Test
+	void servesRepeatedReadsFromMemoryUntilInvalidated() {
+		ProductSummaryDTO teclado = product(1L, "Perifericos");
+		ProductSummaryDTO mouse = product(2L, "Perifericos");
+		when(repository.findActiveProductSummariesByCategory("Perifericos")).thenReturn(List.of(teclado, mouse));
+		when(repository.findProductSummaryById(1L)).thenReturn(Optional.of(teclado));
+
+		cache.getActiveProductsByCategory("Perifericos");
+		cache.getActiveProductsByCategory("Perifericos");
+		// Filled by the category listing
+		assertEquals(Optional.of(teclado), cache.getProduct(1L));
+		verify(repository, times(1)).findActiveProductSummariesByCategory("Perifericos");
+		verify(repository, times(0)).findProductSummaryById(1L);
+		assertEquals(2.0 / 3.0, meterRegistry.get("product.cache.hit.ratio").gauge().value(), 1e-9);
+
+		// A change seen by a poll drops the product and its listing
+		cache.invalidate(1L, "Perifericos");
+		cache.getProduct(1L);
+		cache.getActiveProductsByCategory("Perifericos");
+		verify(repository, times(1)).findProductSummaryById(1L);
+		verify(repository, times(2)).findActiveProductSummariesByCategory("Perifericos");
+		assertEquals(1.0, meterRegistry.get("product.cache.invalidations").counter().count());
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedProductsAndSkipsOversizedListings() {
+		for (long id = 1; id <= 4; id++) {
+			when(repository.findProductSummaryById(id)).thenReturn(Optional.of(product(id, "General")));
+			cache.getProduct(id);
+		}
+		assertEquals(3, cache.size());
+		cache.getProduct(1L);
+		verify(repository, times(2)).findProductSummaryById(1L);
+
+		when(repository.findActiveProductSummaries()).thenReturn(List.of(product(5L, "A"), product(6L, "A"),
+				product(7L, "B"), product(8L, "B")));
+		cache.getActiveProducts();
+		cache.getActiveProducts();
+		verify(repository, times(2)).findActiveProductSummaries();
+		assertTrue(cache.size() <= 3);
+	}
+
+	@Test
+	void stalenessOnlyCoversEntriesThatCanStillBeServed() throws InterruptedException {
+		meterRegistry = new SimpleMeterRegistry();
+		cache = new ProductCache(repository, meterRegistry, true, 3, 200);
+		when(repository.findProductSummaryById(1L)).thenReturn(Optional.of(product(1L, "General")));
+		when(repository.findProductSummaryById(2L)).thenReturn(Optional.of(product(2L, "General")));
+
+		cache.getProduct(1L);
+		Thread.sleep(100);
+		double age = meterRegistry.get("product.cache.staleness").gauge().value();
+		assertTrue(age >= 100 && age < 200, "age " + age);
+
+		// Product 1 expires and is never requested again; product 2 is fresh
+		Thread.sleep(150);
+		cache.getProduct(2L);
+		assertTrue(meterRegistry.get("product.cache.staleness").gauge().value() < 100);
+		Thread.sleep(250);
+		assertEquals(0.0, meterRegistry.get("product.cache.staleness").gauge().value());
+	}
+
+	private static ProductSummaryDTO product(Long id, String category) {
+		ProductSummaryDTO product = new ProductSummaryDTO();
+		product.setId(id);
+		product.setName("p" + id);
+		product.setCategory(category);
+		product.setActive(true);
+		return product;
+	}
+}
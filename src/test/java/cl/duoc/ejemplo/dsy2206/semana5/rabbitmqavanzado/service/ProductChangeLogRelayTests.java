@@ -0,0 +1,241 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.ProductChangeLog;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductChangeLogRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:outbox;DB_CLOSE_DELAY=-1",
+		"outbox.relay.enabled=true",
+		"outbox.relay.interval=3600000",
+		"outbox.write-path-capture.enabled=true",
+		"outbox.relay.confirm-timeout=200",
+		"stock.monitoring.enabled=false",
+		"price.monitoring.change-threshold=5.0"})
+@ActiveProfiles("h2")
+class ProductChangeLogRelayTests {
+
+	@Autowired
+	private ProductChangeLogRelay relay;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private ProductChangeLogRepository changeLogRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@MockBean(name = "confirmingRabbitTemplate")
+	private RabbitTemplate rabbitTemplate;
+
+	// What the broker does with each published event; acks by default
+	private BiConsumer<Object, CorrelationData> broker;
+
+	@BeforeEach
+	void setUp() {
+		changeLogRepository.deleteAll();
+		restartBroker();
+	}
+
+	@Test
+	void writesAreLoggedAndRelayedToBothExchanges() {
+		Product sold = productRepository.save(product("Café", 100, "1000.00"));
+		Product restocked = productRepository.save(product("Arroz", 10, "500.00"));
+		assertEquals(0, changeLogRepository.count());
+
+		sold.setQuantity(97);
+		sold.updatePrice(new BigDecimal("1100.00"));
+		productRepository.save(sold);
+		restocked.setQuantity(50);
+		restocked.updatePrice(new BigDecimal("505.00"));
+		productRepository.save(restocked);
+		assertEquals(2, changeLogRepository.count());
+
+		relay.relayChanges();
+
+		ArgumentCaptor<StockChangeEventDTO> stockEvent = ArgumentCaptor.forClass(StockChangeEventDTO.class);
+		verify(rabbitTemplate).convertAndSend(eq(RabbitMQConfig.STOCK_CHANGE_EXCHANGE), eq(RabbitMQConfig.STOCK_CHANGE_ROUTING_KEY), stockEvent.capture(), any(CorrelationData.class));
+		assertEquals(sold.getId(), stockEvent.getValue().getProductId());
+		assertEquals(3, stockEvent.getValue().getQuantityChanged());
+		assertEquals(new BigDecimal("3300.00"), stockEvent.getValue().getSaleTotal());
+
+		// The 1% change on the restocked product stays below the threshold
+		ArgumentCaptor<PriceChangeEventDTO> priceEvent = ArgumentCaptor.forClass(PriceChangeEventDTO.class);
+		verify(rabbitTemplate).convertAndSend(eq(RabbitMQConfig.PRICE_CHANGE_EXCHANGE), eq(RabbitMQConfig.PRICE_CHANGE_ROUTING_KEY), priceEvent.capture(), any(CorrelationData.class));
+		assertEquals(sold.getId(), priceEvent.getValue().getProductId());
+		assertEquals(10.0, priceEvent.getValue().getChangePercentage());
+		assertEquals("INCREASE", priceEvent.getValue().getChangeType());
+
+		assertEquals(0, changeLogRepository.count());
+	}
+
+	@Test
+	void failedPublishKeepsTheBatchForTheNextRun() {
+		Product product = productRepository.save(product("Té", 20, "300.00"));
+		product.setQuantity(15);
+		productRepository.save(product);
+		doThrow(new AmqpException("broker down")).when(rabbitTemplate)
+				.convertAndSend(any(String.class), any(String.class), any(Object.class), any(CorrelationData.class));
+
+		relay.relayChanges();
+		assertEquals(1, changeLogRepository.count());
+
+		restartBroker();
+		relay.relayChanges();
+		verify(rabbitTemplate).convertAndSend(eq(RabbitMQConfig.STOCK_CHANGE_EXCHANGE), eq(RabbitMQConfig.STOCK_CHANGE_ROUTING_KEY),
+				any(StockChangeEventDTO.class), any(CorrelationData.class));
+		assertEquals(0, changeLogRepository.count());
+	}
+
+	@Test
+	void nackedBatchStaysClaimedAndIsPublishedAgain() {
+		Product product = productRepository.save(product("Yerba", 40, "2500.00"));
+		product.setQuantity(38);
+		productRepository.save(product);
+		broker = (event, correlation) -> correlation.getFuture().complete(new CorrelationData.Confirm(false, "queue full"));
+		long relayedBefore = relay.getRelayedChanges();
+
+		relay.relayChanges();
+
+		List<ProductChangeLog> kept = changeLogRepository.findAll();
+		assertEquals(1, kept.size());
+		assertNotNull(kept.get(0).getClaimedBy());
+		assertEquals(0, relay.getRelayedChanges() - relayedBefore);
+
+		restartBroker();
+		relay.relayChanges();
+		verify(rabbitTemplate).convertAndSend(eq(RabbitMQConfig.STOCK_CHANGE_EXCHANGE), eq(RabbitMQConfig.STOCK_CHANGE_ROUTING_KEY),
+				any(StockChangeEventDTO.class), any(CorrelationData.class));
+		assertEquals(0, changeLogRepository.count());
+	}
+
+	@Test
+	void onlyRowsWhoseEventsWereAckedAreDeleted() {
+		LocalDateTime now = LocalDateTime.now();
+		changeLogRepository.saveAll(List.of(change(1L, now), change(2L, now), change(3L, now)));
+		broker = (event, correlation) -> {
+			long productId = ((StockChangeEventDTO) event).getProductId();
+			if (productId == 2L) {
+				// Unroutable: returned, then acked
+				correlation.setReturned(new ReturnedMessage(new Message(new byte[0]), 312, "NO_ROUTE",
+						RabbitMQConfig.STOCK_CHANGE_EXCHANGE, RabbitMQConfig.STOCK_CHANGE_ROUTING_KEY));
+				correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+			} else if (productId == 1L) {
+				correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+			}
+			// Product 3 is never confirmed and times out
+		};
+
+		relay.relayChanges();
+
+		assertEquals(List.of(2L, 3L), changeLogRepository.findAll().stream().map(ProductChangeLog::getProductId).sorted().toList());
+	}
+
+	@Test
+	void heldRowsAreRetriedAloneAndKeepTheirClaim() {
+		LocalDateTime now = LocalDateTime.now();
+		changeLogRepository.saveAll(List.of(change(1L, now), change(2L, now)));
+		broker = (event, correlation) -> correlation.getFuture().complete(new CorrelationData.Confirm(false, "queue full"));
+		relay.relayChanges();
+		// The outage goes on; the held claims are aged to just short of the claim timeout
+		LocalDateTime staleClaim = now.minusSeconds(50);
+		transactionTemplate.executeWithoutResult(status -> changeLogRepository.findAll().forEach(change -> change.setClaimedAt(staleClaim)));
+		changeLogRepository.saveAll(List.of(change(3L, now), change(4L, now)));
+		reset(rabbitTemplate);
+		doAnswer(invocation -> {
+			broker.accept(invocation.getArgument(2), invocation.getArgument(3));
+			return null;
+		}).when(rabbitTemplate).convertAndSend(any(String.class), any(String.class), any(Object.class), any(CorrelationData.class));
+
+		relay.relayChanges();
+
+		ArgumentCaptor<StockChangeEventDTO> retried = ArgumentCaptor.forClass(StockChangeEventDTO.class);
+		verify(rabbitTemplate, times(2)).convertAndSend(eq(RabbitMQConfig.STOCK_CHANGE_EXCHANGE), eq(RabbitMQConfig.STOCK_CHANGE_ROUTING_KEY),
+				retried.capture(), any(CorrelationData.class));
+		assertEquals(List.of(1L, 2L), retried.getAllValues().stream().map(StockChangeEventDTO::getProductId).toList());
+		List<ProductChangeLog> rows = changeLogRepository.findAll();
+		rows.stream().filter(row -> row.getProductId() <= 2L)
+				.forEach(row -> assertTrue(row.getClaimedAt().isAfter(staleClaim), "claim must be renewed"));
+		rows.stream().filter(row -> row.getProductId() > 2L).forEach(row -> assertNull(row.getClaimedBy()));
+
+		// Once the held rows are confirmed, the next run claims the newer ones
+		restartBroker();
+		relay.relayChanges();
+		assertEquals(List.of(3L, 4L), changeLogRepository.findAll().stream().map(ProductChangeLog::getProductId).sorted().toList());
+		relay.relayChanges();
+		assertEquals(0, changeLogRepository.count());
+	}
+
+	@Test
+	void concurrentRelaysClaimDisjointBatches() {
+		LocalDateTime now = LocalDateTime.now();
+		changeLogRepository.saveAll(List.of(change(1L, now), change(2L, now), change(3L, now)));
+
+		int claimedByA = transactionTemplate.execute(status -> changeLogRepository.claimBatch("relay-a", now, now.minusMinutes(1), 2));
+		int claimedByB = transactionTemplate.execute(status -> changeLogRepository.claimBatch("relay-b", now, now.minusMinutes(1), 5));
+
+		assertEquals(2, claimedByA);
+		assertEquals(1, claimedByB);
+		verify(rabbitTemplate, never()).convertAndSend(any(String.class), any(String.class), any(Object.class), any(CorrelationData.class));
+	}
+
+	private void restartBroker() {
+		reset(rabbitTemplate);
+		broker = (event, correlation) -> correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+		doAnswer(invocation -> {
+			broker.accept(invocation.getArgument(2), invocation.getArgument(3));
+			return null;
+		}).when(rabbitTemplate).convertAndSend(any(String.class), any(String.class), any(Object.class), any(CorrelationData.class));
+	}
+
+	private static Product product(String name, int quantity, String price) {
+		Product product = new Product();
+		product.setName(name);
+		product.setCategory("Almacén");
+		product.setQuantity(quantity);
+		product.setActive(true);
+		product.setPrice(new BigDecimal(price));
+		return product;
+	}
+
+	private static ProductChangeLog change(long productId, LocalDateTime at) {
+		return new ProductChangeLog(null, productId, "p" + productId, "General", 10, 9, null, null, at, null, null);
+	}
+}
@@ -0,0 +1,113 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesWindowDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SalesWindowAggregatorTests {
+
+	private static final Duration ONE_MINUTE = Duration.ofMinutes(1);
+	private static final Duration FIVE_MINUTES = Duration.ofMinutes(5);
+
+	// Starts on a minute boundary
+	private final AtomicLong now = new AtomicLong(1_750_000_020_000L);
+	private final SalesWindowAggregator aggregator = new SalesWindowAggregator(Duration.ofSeconds(5),
+			List.of(ONE_MINUTE, FIVE_MINUTES), List.of(ONE_MINUTE), now::get);
+
+	@Test
+	void slidingWindowsExpireSalesBucketByBucket() {
+		aggregator.record(sale(1L, "Bebidas", 2, "2000.00"));
+		now.addAndGet(30_000);
+		aggregator.record(sale(2L, "Bebidas", 1, "500.50"));
+		aggregator.record(sale(3L, "Snacks", 4, "1200.00"));
+
+		assertCategory(ONE_MINUTE, "Bebidas", 2, 3, "2500.50");
+		now.addAndGet(30_000);
+		// The first sale left the one-minute window but not the five-minute one
+		assertCategory(ONE_MINUTE, "Bebidas", 1, 1, "500.50");
+		assertCategory(FIVE_MINUTES, "Bebidas", 2, 3, "2500.50");
+		assertEquals(new BigDecimal("1200.00"),
+				aggregator.getProductTotals(FIVE_MINUTES, false, 3L).orElseThrow().getRevenue());
+
+		now.addAndGet(Duration.ofHours(2).toMillis());
+		assertCategory(FIVE_MINUTES, "Bebidas", 0, 0, "0.00");
+		assertTrue(aggregator.getCategoryBreakdown(FIVE_MINUTES, false).orElseThrow().isEmpty());
+	}
+
+	@Test
+	void tumblingWindowReportsTheLastClosedMinute() {
+		aggregator.record(sale(1L, "Bebidas", 2, "2000.00"));
+		now.addAndGet(59_000);
+		aggregator.record(sale(1L, "Bebidas", 1, "1000.00"));
+		assertCategoryTumbling("Bebidas", 0, "0.00");
+
+		now.addAndGet(2_000);
+		aggregator.record(sale(1L, "Bebidas", 5, "5000.00"));
+		assertCategoryTumbling("Bebidas", 3, "3000.00");
+
+		// A minute without sales closes empty
+		now.addAndGet(120_000);
+		assertCategoryTumbling("Bebidas", 0, "0.00");
+	}
+
+	@Test
+	void runningTotalsMatchARecountOfTheWindow() {
+		Random random = new Random(42);
+		List<long[]> sales = new ArrayList<>();
+		for (int i = 0; i < 5_000; i++) {
+			now.addAndGet(random.nextInt(400));
+			long cents = 100 + random.nextInt(100_000);
+			String category = "c" + random.nextInt(7);
+			aggregator.record(sale((long) random.nextInt(50), category, 1 + random.nextInt(3), BigDecimal.valueOf(cents, 2).toPlainString()));
+			sales.add(new long[] {now.get(), cents, category.charAt(1)});
+
+			if (i % 250 == 0) {
+				long bucket = 5_000;
+				long windowStart = (Math.floorDiv(now.get(), bucket) - 59) * bucket;
+				long expectedCents = sales.stream()
+						.filter(sale -> sale[0] >= windowStart && sale[2] == '3')
+						.mapToLong(sale -> sale[1])
+						.sum();
+				assertEquals(BigDecimal.valueOf(expectedCents, 2),
+						aggregator.getCategoryTotals(FIVE_MINUTES, false, "c3").orElseThrow().getRevenue());
+			}
+		}
+	}
+
+	@Test
+	void unconfiguredWindowsAreNotFound() {
+		assertTrue(aggregator.getCategoryTotals(Duration.ofMinutes(7), false, "Bebidas").isEmpty());
+		assertTrue(aggregator.getCategoryTotals(FIVE_MINUTES, true, "Bebidas").isEmpty());
+		assertEquals(4, aggregator.getWindowTotals().size());
+	}
+
+	private void assertCategory(Duration window, String category, long events, long units, String revenue) {
+		SalesWindowDTO totals = aggregator.getCategoryTotals(window, false, category).orElseThrow();
+		assertEquals(events, totals.getEvents());
+		assertEquals(units, totals.getUnitsSold());
+		assertEquals(new BigDecimal(revenue), totals.getRevenue());
+	}
+
+	private void assertCategoryTumbling(String category, long units, String revenue) {
+		SalesWindowDTO totals = aggregator.getCategoryTotals(ONE_MINUTE, true, category).orElseThrow();
+		assertEquals(SalesWindowAggregator.TUMBLING, totals.getType());
+		assertEquals(units, totals.getUnitsSold());
+		assertEquals(new BigDecimal(revenue), totals.getRevenue());
+	}
+
+	private static StockChangeEventDTO sale(Long productId, String category, int units, String saleTotal) {
+		return new StockChangeEventDTO(productId, "p" + productId, category, units, 10, new BigDecimal(saleTotal),
+				LocalDateTime.now());
+	}
+}
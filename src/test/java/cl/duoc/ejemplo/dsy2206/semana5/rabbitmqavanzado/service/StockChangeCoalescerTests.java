@@ -0,0 +1,59 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StockChangeCoalescerTests {
+
+	private static final LocalDateTime T0 = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+	@Test
+	void mergesDecrementsWithinTheWindow() {
+		StockChangeCoalescer coalescer = new StockChangeCoalescer(true, 1_000);
+
+		coalescer.offer(event(1L, 2, 98, "200.00", T0), 0);
+		coalescer.offer(event(1L, 3, 95, "300.00", T0.plusSeconds(1)), 400);
+		coalescer.offer(event(2L, 1, 9, "50.00", T0), 500);
+
+		assertTrue(coalescer.drainExpired(999).isEmpty());
+		List<StockChangeEventDTO> released = coalescer.drainExpired(1_000);
+
+		assertEquals(1, released.size());
+		StockChangeEventDTO merged = released.get(0);
+		assertEquals(1L, merged.getProductId());
+		assertEquals(5, merged.getQuantityChanged());
+		assertEquals(95, merged.getNewQuantity());
+		assertEquals(new BigDecimal("500.00"), merged.getSaleTotal());
+		assertEquals(T0.plusSeconds(1), merged.getChangeTimestamp());
+		assertEquals(1, coalescer.pendingCount());
+		assertEquals(1, coalescer.getMergedEvents());
+	}
+
+	@Test
+	void laterEventOpensANewWindowAfterRelease() {
+		StockChangeCoalescer coalescer = new StockChangeCoalescer(true, 1_000);
+		StockChangeEventDTO first = event(1L, 2, 98, "200.00", T0);
+
+		coalescer.offer(first, 0);
+		coalescer.drainExpired(1_000);
+		coalescer.offer(event(1L, 1, 97, "100.00", T0), 1_500);
+
+		List<StockChangeEventDTO> released = coalescer.drainAll();
+		assertEquals(1, released.size());
+		assertEquals(1, released.get(0).getQuantityChanged());
+		// The caller's event is never mutated by a merge
+		assertEquals(2, first.getQuantityChanged());
+	}
+
+	private static StockChangeEventDTO event(long productId, int sold, int remaining, String saleTotal, LocalDateTime at) {
+		return new StockChangeEventDTO(productId, "Producto " + productId, "General", sold, remaining,
+				new BigDecimal(saleTotal), at);
+	}
+}
@@ -0,0 +1,71 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductShardSlice;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.BoundedTagCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StockChangeMonitoringMetricsTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final ProductRepository repository = mock(ProductRepository.class);
+	private final StockChangeNotificationService notifications = mock(StockChangeNotificationService.class);
+	private final List<ProductoDTO> rows = List.of(row(1L, "Bebidas"), row(2L, "Snacks"), row(3L, "Lacteos"), row(4L, "Bebidas"));
+	private StockChangeMonitoringService monitoringService;
+
+	@BeforeEach
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	void setUp() {
+		when(repository.streamActiveProductStock(ArgumentMatchers.<ProductShardSlice>any(), anyInt()))
+				.thenAnswer(invocation -> rows.stream());
+		when(notifications.isNotificationsEnabled()).thenReturn(true);
+		ObjectProvider absent = mock(ObjectProvider.class);
+		// At most two categories get their own counter
+		monitoringService = new StockChangeMonitoringService(repository, notifications,
+				mock(StockScanWatermarkStore.class), mock(StockSnapshotCheckpointStore.class),
+				new ProductCache(repository, new SimpleMeterRegistry(), false, 0, 0), meterRegistry,
+				mock(PlatformTransactionManager.class), absent, absent, 16, 1, 0, 2);
+	}
+
+	@Test
+	void pollsRecordDurationRowsAndEventsByCategory() {
+		monitoringService.monitorStockChanges();
+		rows.forEach(row -> row.setQuantity(row.getQuantity() - 1));
+		monitoringService.monitorStockChanges();
+
+		assertEquals(2, meterRegistry.get("stock.monitoring.poll").tag("scan", "full").timer().count());
+		assertEquals(8.0, meterRegistry.get("stock.monitoring.rows").tag("scan", "full").counter().count());
+		assertEquals(4.0, meterRegistry.get("stock.monitoring.poll.events").summary().max());
+		assertEquals(4.0, meterRegistry.get("stock.monitoring.snapshot.size").gauge().value());
+
+		assertEquals(2.0, events("Bebidas"));
+		assertEquals(1.0, events("Snacks"));
+		// Third category past the cap
+		assertEquals(1.0, events(BoundedTagCounter.OTHER));
+		assertEquals(0, meterRegistry.find("stock.monitoring.events").tag("category", "Lacteos").counters().size());
+	}
+
+	private double events(String category) {
+		return meterRegistry.get("stock.monitoring.events").tag("source", "poll").tag("category", category).counter().count();
+	}
+
+	private static ProductoDTO row(Long id, String category) {
+		return new ProductoDTO(id, "p" + id, null, 10, category, true, new BigDecimal("990.00"),
+				LocalDateTime.of(2025, 6, 1, 12, 0), null, 0L);
+	}
+}
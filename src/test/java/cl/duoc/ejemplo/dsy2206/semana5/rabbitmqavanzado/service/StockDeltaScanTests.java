@@ -0,0 +1,141 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockScanWatermarkStore.Watermark;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockShardCoordinatorTests.RecordingNotificationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The delta stock scan against H2: keyset pages past the watermark, the overlap re-read of late
+ * commits, and the watermark file a restarted monitor resumes from.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+		"spring.datasource.url=jdbc:h2:mem:deltascan;DB_CLOSE_DELAY=-1",
+		"stock.monitoring.scan-mode=delta",
+		"stock.monitoring.delta.page-size=2",
+		"stock.monitoring.delta.overlap-ms=5000"
+})
+@ActiveProfiles("h2")
+@Import(StockShardCoordinatorTests.RecordingNotifications.class)
+class StockDeltaScanTests {
+
+	private static Path watermarkFile;
+
+	@Autowired
+	private StockChangeMonitoringService monitoringService;
+
+	@Autowired
+	private StockScanWatermarkStore watermarkStore;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private RecordingNotificationService notifications;
+
+	@DynamicPropertySource
+	static void watermarkFile(DynamicPropertyRegistry registry) throws IOException {
+		watermarkFile = Files.createTempDirectory("delta-scan").resolve("stock-scan.watermark");
+		registry.add("stock.monitoring.delta.watermark-file", watermarkFile::toString);
+	}
+
+	@Test
+	void changedRowsAreReadInKeysetPagesAndTheWatermarkIsPersisted() {
+		List<Product> saved = productRepository.saveAll(IntStream.range(0, 5).mapToObj(i -> product("d" + i)).toList());
+		monitoringService.monitorStockChanges();
+		int before = events().size();
+		double deltaPolls = deltaPolls();
+
+		for (int i = 0; i < saved.size(); i++) {
+			saved.get(i).setQuantity(100 - (i + 1));
+		}
+		productRepository.saveAll(saved);
+		monitoringService.monitorStockChanges();
+
+		// Five changed rows over three pages of two
+		assertEquals(deltaPolls + 1, deltaPolls());
+		List<StockChangeEventDTO> emitted = events().subList(before, events().size());
+		assertEquals(saved.stream().map(Product::getId).toList(), emitted.stream().map(StockChangeEventDTO::getProductId).sorted().toList());
+		assertEquals(List.of(1, 2, 3, 4, 5), emitted.stream().map(StockChangeEventDTO::getQuantityChanged).sorted().toList());
+
+		// The watermark is the newest (LAST_PRICE_UPDATE, ID) read, and a restarted monitor resumes from the file
+		Product newest = productRepository.findAllById(saved.stream().map(Product::getId).toList()).stream()
+				.max(Comparator.comparing(Product::getLastPriceUpdate).thenComparing(Product::getId))
+				.orElseThrow();
+		assertEquals(new Watermark(newest.getLastPriceUpdate(), newest.getId()), watermarkStore.get());
+		assertEquals(watermarkStore.get(), new StockScanWatermarkStore(watermarkFile.toString()).get());
+	}
+
+	@Test
+	void lateCommitsWithinTheOverlapAreReadAgain() {
+		Product late = productRepository.save(product("late"));
+		productRepository.save(product("newest"));
+		monitoringService.monitorStockChanges();
+		Watermark watermark = watermarkStore.get();
+		int before = events().size();
+
+		// Committed after the last poll with a LAST_PRICE_UPDATE already behind the watermark
+		write(late.getId(), 90, watermark.timestamp().minusSeconds(2));
+		monitoringService.monitorStockChanges();
+		assertEquals(before + 1, events().size());
+		assertEquals(late.getId(), events().get(before).getProductId());
+		assertEquals(10, events().get(before).getQuantityChanged());
+
+		// Further back than the overlap (or never bumped at all), a write is invisible to the delta scan
+		write(late.getId(), 80, watermark.timestamp().minusSeconds(10));
+		monitoringService.monitorStockChanges();
+		assertEquals(before + 1, events().size());
+		assertEquals(watermark, watermarkStore.get());
+	}
+
+	private double deltaPolls() {
+		return meterRegistry.get("stock.monitoring.poll").tag("scan", "delta").timer().count();
+	}
+
+	private void write(Long productId, int quantity, LocalDateTime lastPriceUpdate) {
+		jdbcTemplate.update("UPDATE PRODUCT SET QUANTITY = ?, LAST_PRICE_UPDATE = ? WHERE ID = ?",
+				quantity, Timestamp.valueOf(lastPriceUpdate), productId);
+	}
+
+	private List<StockChangeEventDTO> events() {
+		return notifications.events;
+	}
+
+	private static Product product(String name) {
+		Product product = new Product();
+		product.setName(name);
+		product.setCategory("General");
+		product.setQuantity(100);
+		product.setActive(true);
+		product.setPrice(new BigDecimal("1000.00"));
+		return product;
+	}
+}
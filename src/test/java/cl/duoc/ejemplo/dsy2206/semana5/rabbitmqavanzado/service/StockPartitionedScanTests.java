@@ -0,0 +1,145 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductShardSlice;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockShardCoordinatorTests.RecordingNotificationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The partitioned full scan must detect exactly what the single-cursor scan detects on the same rows:
+ * two monitors, one per scan, poll one H2 catalog with sparse IDs, so some ID-range partitions are empty.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+		"spring.datasource.url=jdbc:h2:mem:partitionscan;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("h2")
+class StockPartitionedScanTests {
+
+	// 1..6, 500..503 and 10000: with 4 partitions of 2500 IDs the two middle ones hold no product
+	private static final List<Long> IDS = List.of(1L, 2L, 3L, 4L, 5L, 6L, 500L, 501L, 502L, 503L, 10_000L);
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void clearCatalog() {
+		jdbcTemplate.update("DELETE FROM PRODUCT");
+	}
+
+	@Test
+	void emptyCatalogYieldsNothingInEitherScan() {
+		Monitor full = monitor(1, null);
+		Monitor partitioned = monitor(4, null);
+
+		full.poll();
+		partitioned.poll();
+
+		assertTrue(full.events().isEmpty());
+		assertTrue(partitioned.events().isEmpty());
+	}
+
+	@Test
+	void partitionedScanMatchesTheFullScan() {
+		Monitor full = monitor(1, null);
+		Monitor partitioned = monitor(4, null);
+		IDS.forEach(id -> insert(id, 100));
+		full.poll();
+		partitioned.poll();
+
+		sellAndRestock();
+		full.poll();
+		partitioned.poll();
+
+		// Every product but the restocked (5) and untouched (503) ones
+		assertEquals(List.of("1:-1", "2:-2", "3:-3", "4:-4", "6:-6", "500:-500", "501:-501", "502:-2", "10000:-10"), full.events());
+		assertEquals(full.events(), partitioned.events());
+	}
+
+	@Test
+	void partitionedScanMatchesTheFullScanWithinAShardSlice() {
+		ProductShardSlice slice = new ProductShardSlice(4, Set.of(1, 2));
+		Monitor full = monitor(1, slice);
+		Monitor partitioned = monitor(4, slice);
+		IDS.forEach(id -> insert(id, 100));
+		full.poll();
+		partitioned.poll();
+
+		sellAndRestock();
+		full.poll();
+		partitioned.poll();
+
+		assertEquals(List.of("1:-1", "2:-2", "6:-6", "501:-501", "502:-2"), full.events());
+		assertEquals(full.events(), partitioned.events());
+	}
+
+	// Decreases of various sizes, one restock and one untouched product
+	private void sellAndRestock() {
+		jdbcTemplate.update("UPDATE PRODUCT SET QUANTITY = 100 - MOD(ID, 1000) WHERE ID <> 5 AND ID <> 503");
+		jdbcTemplate.update("UPDATE PRODUCT SET QUANTITY = 98 WHERE ID = 502");
+		jdbcTemplate.update("UPDATE PRODUCT SET QUANTITY = 90 WHERE ID = 10000");
+		jdbcTemplate.update("UPDATE PRODUCT SET QUANTITY = 150 WHERE ID = 5");
+	}
+
+	private void insert(long id, int quantity) {
+		jdbcTemplate.update("INSERT INTO PRODUCT (ID, NAME, QUANTITY, CATEGORY, ACTIVE, PRICE, LAST_PRICE_UPDATE, VERSION) "
+				+ "VALUES (?, ?, ?, 'General', TRUE, 1000.00, CURRENT_TIMESTAMP, 0)", id, "p" + id, quantity);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Monitor monitor(int partitions, ProductShardSlice slice) {
+		ObjectProvider coordinatorProvider = mock(ObjectProvider.class);
+		if (slice != null) {
+			StockShardCoordinator coordinator = mock(StockShardCoordinator.class);
+			when(coordinator.currentSlice()).thenReturn(slice);
+			when(coordinator.getOwnershipVersion()).thenReturn(1L);
+			when(coordinatorProvider.getIfAvailable()).thenReturn(coordinator);
+		}
+		RecordingNotificationService notifications = new RecordingNotificationService();
+		StockChangeMonitoringService service = new StockChangeMonitoringService(productRepository, notifications,
+				mock(StockScanWatermarkStore.class), mock(StockSnapshotCheckpointStore.class),
+				new ProductCache(productRepository, new SimpleMeterRegistry(), false, 0, 0), new SimpleMeterRegistry(),
+				transactionManager, coordinatorProvider, mock(ObjectProvider.class), 16, partitions, 2, 50);
+		ReflectionTestUtils.setField(service, "fetchSize", 100);
+		return new Monitor(service, notifications, new TransactionTemplate(transactionManager));
+	}
+
+	private record Monitor(StockChangeMonitoringService service, RecordingNotificationService notifications,
+						   TransactionTemplate transaction) {
+
+		// The transaction the @Transactional proxy would open; partitions run on their own
+		void poll() {
+			transaction.executeWithoutResult(status -> service.monitorStockChanges());
+		}
+
+		List<String> events() {
+			return notifications.events.stream()
+					.sorted((a, b) -> Long.compare(a.getProductId(), b.getProductId()))
+					.map(event -> event.getProductId() + ":-" + event.getQuantityChanged())
+					.toList();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.RabbitmqavanzadoApplication;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductShardSlice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs several application instances against one in-memory H2 database and checks that the shard
+ * leases split the catalog without overlap, are rebalanced when an instance dies or joins, and that
+ * released shards are handed over without losing sales.
+ */
+class StockShardCoordinatorTests {
+
+	private static final int SHARDS = 12;
+	private static final long LEASE_TTL_MS = 5_000;
+
+	private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+	// One database per test, shared by that test's instances
+	private final String database = "sharding-" + UUID.randomUUID();
+
+	@AfterEach
+	void stopInstances() {
+		instances.forEach(ConfigurableApplicationContext::close);
+	}
+
+	@Test
+	void instancesShareTheCatalogAndTakeOverOnFailure() throws InterruptedException {
+		ConfigurableApplicationContext nodeA = start("node-a");
+		ConfigurableApplicationContext nodeB = start("node-b");
+		rebalance(nodeA, nodeB);
+
+		Set<Integer> shardsA = owned(nodeA);
+		Set<Integer> shardsB = owned(nodeB);
+		assertEquals(SHARDS / 2, shardsA.size());
+		assertEquals(SHARDS / 2, shardsB.size());
+		assertTrue(shardsA.stream().noneMatch(shardsB::contains));
+
+		// Each instance only emits the changes of its own slice, and together they cover the catalog
+		ProductRepository products = nodeA.getBean(ProductRepository.class);
+		List<Product> saved = products.saveAll(IntStream.range(0, 60).mapToObj(i -> product("p" + i)).toList());
+		poll(nodeA, nodeB);
+		saved.forEach(product -> product.setQuantity(99));
+		products.saveAll(saved);
+		poll(nodeA, nodeB);
+
+		List<Long> emittedA = emittedProductIds(nodeA);
+		List<Long> emittedB = emittedProductIds(nodeB);
+		ProductShardSlice sliceA = nodeA.getBean(StockShardCoordinator.class).currentSlice();
+		assertTrue(emittedA.stream().allMatch(sliceA::contains));
+		assertTrue(emittedB.stream().noneMatch(sliceA::contains));
+		Set<Long> all = new HashSet<>(emittedA);
+		all.addAll(emittedB);
+		assertEquals(emittedA.size() + emittedB.size(), all.size());
+		assertEquals(saved.stream().map(Product::getId).collect(Collectors.toSet()), all);
+
+		// node-b stops heartbeating: once its leases expire it stops scanning and node-a takes every shard
+		Thread.sleep(LEASE_TTL_MS + 500);
+		assertNull(nodeB.getBean(StockShardCoordinator.class).currentSlice());
+		rebalance(nodeA);
+		assertEquals(SHARDS, owned(nodeA).size());
+
+		// A new instance joins and receives half of the shards
+		ConfigurableApplicationContext nodeC = start("node-c");
+		rebalance(nodeA, nodeC);
+		assertEquals(SHARDS / 2, owned(nodeA).size());
+		assertEquals(SHARDS / 2, owned(nodeC).size());
+		assertTrue(owned(nodeA).stream().noneMatch(owned(nodeC)::contains));
+	}
+
+	@Test
+	void releasedShardsAreHandedOverWithoutLosingSales() {
+		ConfigurableApplicationContext nodeA = start("node-a");
+		ProductRepository products = nodeA.getBean(ProductRepository.class);
+		List<Product> saved = products.saveAll(IntStream.range(0, 60).mapToObj(i -> product("h" + i)).toList());
+		ConfigurableApplicationContext nodeB = start("node-b");
+		poll(nodeA, nodeB);
+
+		// node-c takes shards from both; the sales land after their last scan and before node-c's first one
+		ConfigurableApplicationContext nodeC = start("node-c");
+		rebalance(nodeA, nodeB, nodeC);
+		assertEquals(SHARDS / 3, owned(nodeC).size());
+		saved.forEach(product -> product.setQuantity(90));
+		products.saveAll(saved);
+		poll(nodeA, nodeB, nodeC);
+
+		ProductShardSlice sliceC = nodeC.getBean(StockShardCoordinator.class).currentSlice();
+		List<Long> emittedC = emittedProductIds(nodeC);
+		assertEquals(saved.stream().filter(product -> sliceC.contains(product.getId())).count(), emittedC.size());
+		assertTrue(emittedC.stream().allMatch(sliceC::contains));
+		// Every sale is emitted exactly once across the three nodes
+		List<Long> emitted = new ArrayList<>(emittedC);
+		emitted.addAll(emittedProductIds(nodeA));
+		emitted.addAll(emittedProductIds(nodeB));
+		assertEquals(saved.stream().map(Product::getId).sorted().toList(), emitted.stream().sorted().toList());
+	}
+
+	private ConfigurableApplicationContext start(String nodeId) {
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(RabbitmqavanzadoApplication.class, RecordingNotifications.class)
+				.web(WebApplicationType.NONE)
+				.profiles("h2")
+				// Arguments, not builder properties: those would lose against application.properties
+				.run("--spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+						"--stock.monitoring.sharding.enabled=true",
+						"--stock.monitoring.sharding.node-id=" + nodeId,
+						"--stock.monitoring.sharding.shards=" + SHARDS,
+						"--stock.monitoring.sharding.lease-ttl=" + LEASE_TTL_MS,
+						"--stock.monitoring.sharding.heartbeat-interval=3600000");
+		instances.add(context);
+		return context;
+	}
+
+	// A few rounds so releases made by one instance are claimed by the others
+	private static void rebalance(ConfigurableApplicationContext... nodes) {
+		for (int round = 0; round < 3; round++) {
+			for (ConfigurableApplicationContext node : nodes) {
+				node.getBean(StockShardCoordinator.class).rebalance();
+			}
+		}
+	}
+
+	// Heartbeats are manual here, so the leases are renewed first to keep them from lapsing mid-test
+	private static void poll(ConfigurableApplicationContext... nodes) {
+		rebalance(nodes);
+		for (ConfigurableApplicationContext node : nodes) {
+			node.getBean(StockChangeMonitoringService.class).monitorStockChanges();
+		}
+	}
+
+	private static Set<Integer> owned(ConfigurableApplicationContext node) {
+		ProductShardSlice slice = node.getBean(StockShardCoordinator.class).currentSlice();
+		assertNotNull(slice);
+		return slice.shards();
+	}
+
+	private static List<Long> emittedProductIds(ConfigurableApplicationContext node) {
+		return node.getBean(RecordingNotificationService.class).events.stream()
+				.map(StockChangeEventDTO::getProductId)
+				.toList();
+	}
+
+	private static Product product(String name) {
+		Product product = new Product();
+		product.setName(name);
+		product.setCategory("General");
+		product.setQuantity(100);
+		product.setActive(true);
+		product.setPrice(new BigDecimal("1000.00"));
+		return product;
+	}
+
+	@TestConfiguration
+	static class RecordingNotifications {
+
+		@Bean
+		@Primary
+		RecordingNotificationService recordingNotificationService() {
+			return new RecordingNotificationService();
+		}
+	}
+
+	static class RecordingNotificationService implements StockChangeNotificationService {
+		final List<StockChangeEventDTO> events = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void notifyStockChange(StockChangeEventDTO stockChangeEvent) {
+			events.add(stockChangeEvent);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void setNotificationsEnabled(boolean enabled) {
+		}
+
+		@Override
+		public boolean isNotificationsEnabled() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockScanWatermarkStore.Watermark;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockSnapshotCheckpointStore.Checkpoint;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util.LongIntSnapshotMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StockSnapshotCheckpointStoreTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void restoresSnapshotAndWatermark() throws Exception {
+		StockSnapshotCheckpointStore store = new StockSnapshotCheckpointStore(tempDir.resolve("snapshot.bin").toString());
+		LongIntSnapshotMap snapshot = new LongIntSnapshotMap(16);
+		for (long id = 1; id <= 5_000; id++) {
+			snapshot.update(id, (int) (id % 97));
+		}
+		Watermark watermark = new Watermark(LocalDateTime.of(2026, 3, 1, 23, 59, 59, 123_456_000), 4_321L);
+
+		assertEquals(5_000, store.write(snapshot, watermark));
+
+		LongIntSnapshotMap restored = new LongIntSnapshotMap(16);
+		Checkpoint checkpoint = store.restore(restored);
+		assertEquals(5_000, checkpoint.entries());
+		assertEquals(watermark, checkpoint.watermark());
+		snapshot.forEach((id, quantity) -> assertEquals(quantity, restored.get(id)));
+	}
+
+	@Test
+	void keepsProductsAddedWhileTheCheckpointIsWritten() throws Exception {
+		// No spare room: every product added between size() and the last entry needs a larger mapping
+		StockSnapshotCheckpointStore store = new StockSnapshotCheckpointStore(tempDir.resolve("growing.bin").toString(), 0);
+		LongIntSnapshotMap snapshot = new LongIntSnapshotMap(16);
+		for (long id = 1; id <= 50_000; id++) {
+			snapshot.update(id, 1);
+		}
+		AtomicBoolean running = new AtomicBoolean(true);
+		Thread arrivals = new Thread(() -> {
+			for (long id = 1_000_000; running.get(); id++) {
+				snapshot.update(id, 2);
+			}
+		});
+		arrivals.start();
+
+		boolean grew = false;
+		try {
+			for (int attempt = 0; attempt < 50 && !grew; attempt++) {
+				LongIntSnapshotMap before = new LongIntSnapshotMap(snapshot.size());
+				snapshot.forEach(before::update);
+				int written = store.write(snapshot, null);
+
+				LongIntSnapshotMap restored = new LongIntSnapshotMap(16);
+				assertEquals(written, store.restore(restored).entries());
+				assertEquals(written, restored.size());
+				// Products are only ever added here, so nothing present before the write may be missing
+				before.forEach((id, quantity) -> assertEquals(quantity, restored.get(id)));
+				grew = written > before.size();
+			}
+		} finally {
+			running.set(false);
+			arrivals.join();
+		}
+		assertTrue(grew, "expected a checkpoint written while the snapshot grew");
+	}
+
+	@Test
+	void ignoresMissingOrCorruptCheckpoint() throws Exception {
+		Path file = tempDir.resolve("corrupt.bin");
+		StockSnapshotCheckpointStore store = new StockSnapshotCheckpointStore(file.toString());
+		LongIntSnapshotMap target = new LongIntSnapshotMap(16);
+
+		assertNull(store.restore(target));
+		Files.write(file, new byte[] {1, 2, 3});
+		assertNull(store.restore(target));
+		assertTrue(target.isEmpty());
+	}
+}
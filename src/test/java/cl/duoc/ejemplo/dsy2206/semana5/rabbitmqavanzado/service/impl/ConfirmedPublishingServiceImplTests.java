@@ -0,0 +1,182 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.ConnectException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The confirm window, retry and backoff against a mocked template: every send is queued with its
+ * {@link CorrelationData}, and the test plays the broker by completing the futures with an ack, a nack
+ * or a return.
+ */
+class ConfirmedPublishingServiceImplTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final BlockingQueue<Send> sends = new LinkedBlockingQueue<>();
+	private RabbitTemplate template;
+	private ConfirmedPublishingServiceImpl publisher;
+
+	@BeforeEach
+	void setUp() {
+		template = mock(RabbitTemplate.class);
+		when(template.getMessageConverter()).thenReturn(new SimpleMessageConverter());
+		doAnswer(invocation -> {
+			sends.add(new Send(invocation.getArgument(2), invocation.getArgument(3), System.nanoTime()));
+			return null;
+		}).when(template).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+		publisher = publisher(2, 5, 50, 10_000);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		sends.forEach(send -> send.correlation().getFuture().complete(new CorrelationData.Confirm(true, null)));
+		publisher.drain();
+	}
+
+	@Test
+	void publishBlocksWhileTheWindowIsFullUntilAnAckFreesASlot() throws Exception {
+		publisher.publish("", "stock", "a");
+		publisher.publish("", "stock", "b");
+		assertEquals(2, publisher.getInFlightCount());
+
+		CompletableFuture<Void> third = CompletableFuture.runAsync(() -> publisher.publish("", "stock", "c"));
+		assertThrows(TimeoutException.class, () -> third.get(300, TimeUnit.MILLISECONDS));
+
+		ack(next());
+		third.get(5, TimeUnit.SECONDS);
+		assertEquals(2, publisher.getInFlightCount());
+		ack(next());
+		ack(next());
+		assertEquals(0, publisher.getInFlightCount());
+		assertEquals(3.0, confirms("ack"));
+		assertEquals(0.0, meterRegistry.get("rabbitmq.publish.retries").counter().count());
+	}
+
+	@Test
+	void nackedAndReturnedMessagesAreRepublishedWithBackoff() throws Exception {
+		publisher.publish("", "stock", "a");
+		Send first = next();
+		String messageId = first.message().getMessageProperties().getMessageId();
+
+		nack(first);
+		Send second = next();
+		// Same message and correlation ID, so consumers can de-duplicate the redelivery
+		assertEquals(messageId, second.message().getMessageProperties().getMessageId());
+		assertEquals(first.correlation().getId(), second.correlation().getId());
+		assertTrue(second.nanos() - first.nanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertEquals(1, publisher.getInFlightCount());
+
+		// An unroutable message is acked by the broker but still has to be sent again
+		second.correlation().setReturned(new ReturnedMessage(second.message(), 312, "NO_ROUTE", "", "stock"));
+		ack(second);
+		Send third = next();
+		assertTrue(third.nanos() - second.nanos() >= TimeUnit.MILLISECONDS.toNanos(100), "backoff must double");
+		assertEquals(1, publisher.getInFlightCount());
+
+		ack(third);
+		assertEquals(0, publisher.getInFlightCount());
+		assertEquals(1.0, confirms("nack"));
+		assertEquals(1.0, confirms("returned"));
+		assertEquals(1.0, confirms("ack"));
+		assertEquals(2.0, meterRegistry.get("rabbitmq.publish.retries").counter().count());
+		assertEquals(0.0, meterRegistry.get("rabbitmq.publish.failures").counter().count());
+	}
+
+	@Test
+	void givesUpAfterMaxAttemptsAndFreesTheSlot() throws Exception {
+		// The initial backoff alone would outlast the test: only the cap keeps the retries coming
+		publisher = publisher(1, 3, 100_000, 20);
+		publisher.publish("", "stock", "a");
+
+		nack(next());
+		nack(next());
+		nack(next());
+
+		assertNull(sends.poll(200, TimeUnit.MILLISECONDS));
+		assertEquals(0, publisher.getInFlightCount());
+		assertEquals(3.0, confirms("nack"));
+		assertEquals(2.0, meterRegistry.get("rabbitmq.publish.retries").counter().count());
+		assertEquals(1.0, meterRegistry.get("rabbitmq.publish.failures").counter().count());
+		// The freed slot takes the next message without blocking
+		publisher.publish("", "stock", "b");
+		ack(next());
+	}
+
+	@Test
+	void failedLocalSendsAreRetriedLikeNacks() throws Exception {
+		doAnswer(invocation -> {
+			sends.add(new Send(invocation.getArgument(2), invocation.getArgument(3), System.nanoTime()));
+			throw new AmqpConnectException(new ConnectException("connection refused"));
+		}).doAnswer(invocation -> {
+			sends.add(new Send(invocation.getArgument(2), invocation.getArgument(3), System.nanoTime()));
+			return null;
+		}).when(template).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+		publisher.publish("", "stock", "a");
+		Send failed = next();
+		assertTrue(failed.correlation().getFuture().isDone());
+		assertFalse(failed.correlation().getFuture().get().isAck());
+
+		ack(next());
+		assertEquals(0, publisher.getInFlightCount());
+		assertEquals(1.0, confirms("nack"));
+		assertEquals(1.0, confirms("ack"));
+	}
+
+	private ConfirmedPublishingServiceImpl publisher(int windowSize, int maxAttempts, long initialBackoffMs, long maxBackoffMs) {
+		ConfirmedPublishingServiceImpl publisher = new ConfirmedPublishingServiceImpl(template, meterRegistry, windowSize);
+		ReflectionTestUtils.setField(publisher, "maxAttempts", maxAttempts);
+		ReflectionTestUtils.setField(publisher, "initialBackoffMs", initialBackoffMs);
+		ReflectionTestUtils.setField(publisher, "maxBackoffMs", maxBackoffMs);
+		return publisher;
+	}
+
+	private Send next() throws InterruptedException {
+		Send send = sends.poll(5, TimeUnit.SECONDS);
+		assertNotNull(send, "expected a send");
+		return send;
+	}
+
+	// The window is released on the confirm callback, which runs synchronously on complete()
+	private static void ack(Send send) {
+		send.correlation().getFuture().complete(new CorrelationData.Confirm(true, null));
+	}
+
+	private static void nack(Send send) {
+		send.correlation().getFuture().complete(new CorrelationData.Confirm(false, "PRECONDITION_FAILED"));
+	}
+
+	private double confirms(String result) {
+		return meterRegistry.get("rabbitmq.publish.confirms").tag("result", result).counter().count();
+	}
+
+	private record Send(Message message, CorrelationData correlation, long nanos) {
+	}
+}
@@ -0,0 +1,77 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FixedPointTests {
+
+	@Test
+	void percentageMatchesBigDecimalOnRandomPrices() {
+		Random random = new Random(11);
+		for (int i = 0; i < 200_000; i++) {
+			long oldCents = random.nextInt(10) == 0 ? 1 + random.nextInt(100) : random.nextLong(1, 100_000_000_00L);
+			long newCents = switch (random.nextInt(3)) {
+				case 0 -> random.nextLong(0, 100_000_000_00L);
+				case 1 -> oldCents + random.nextInt(2001) - 1000;
+				default -> oldCents * (10_000 + random.nextInt(2001) - 1000) / 10_000;
+			};
+			assertSamePercentage(oldCents, newCents);
+		}
+	}
+
+	@Test
+	void halfUpTiesRoundAwayFromZero() {
+		// Exact ties at the fourth decimal: 1/20000 = 0.00005 -> 0.0001, i.e. 0.01%
+		assertSamePercentage(20_000, 20_001);
+		assertSamePercentage(20_000, 19_999);
+		assertEquals(0.01, FixedPoint.changePercentage(20_000, 20_001));
+		assertEquals(-0.01, FixedPoint.changePercentage(20_000, 19_999));
+		assertEquals(0.0, FixedPoint.changePercentage(0, 500));
+	}
+
+	@Test
+	void bigDecimalOverloadMatchesOnAnyScale() {
+		String[][] pairs = {
+				{"1990", "2190.50"}, {"19.9", "19.95"}, {"4990.00", "5490.00"},
+				{"0.03", "0.04"}, {"12.345", "12.346"}, {"1e3", "1001"}, {"99999999999999.99", "1.00"}
+		};
+		for (String[] pair : pairs) {
+			BigDecimal oldPrice = new BigDecimal(pair[0]);
+			BigDecimal newPrice = new BigDecimal(pair[1]);
+			assertEquals(expected(oldPrice, newPrice), FixedPoint.changePercentage(oldPrice, newPrice), pair[0] + " -> " + pair[1]);
+		}
+		assertEquals(0.0, FixedPoint.changePercentage(new BigDecimal("0.00"), BigDecimal.TEN));
+	}
+
+	@Test
+	void outOfRangeValuesFallBackToBigDecimal() {
+		assertSamePercentage(FixedPoint.MAX_MINOR_UNITS * 50, FixedPoint.MAX_MINOR_UNITS * 50 + 7);
+		assertSamePercentage(3, Long.MAX_VALUE / 2);
+	}
+
+	@Test
+	void minorUnitConversionsRoundTrip() {
+		assertEquals(199_050, FixedPoint.toMinorUnits(new BigDecimal("1990.50")));
+		assertEquals(199_000, FixedPoint.toMinorUnits(new BigDecimal("1990")));
+		assertEquals(1_235, FixedPoint.toMinorUnits(new BigDecimal("12.345")));
+		assertEquals(new BigDecimal("1990.50"), FixedPoint.toBigDecimal(199_050));
+	}
+
+	private static void assertSamePercentage(long oldCents, long newCents) {
+		assertEquals(expected(BigDecimal.valueOf(oldCents, 2), BigDecimal.valueOf(newCents, 2)),
+				FixedPoint.changePercentage(oldCents, newCents), oldCents + " -> " + newCents);
+	}
+
+	// The expression Product.getPriceChangePercentage() used before the fixed-point path
+	private static double expected(BigDecimal oldPrice, BigDecimal newPrice) {
+		return newPrice.subtract(oldPrice)
+				.divide(oldPrice, 4, RoundingMode.HALF_UP)
+				.multiply(BigDecimal.valueOf(100))
+				.doubleValue();
+	}
+}
@@ -0,0 +1,51 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongIntSnapshotMapTests {
+
+	@Test
+	void updateReturnsPreviousValue() {
+		LongIntSnapshotMap map = new LongIntSnapshotMap(16);
+
+		assertEquals(LongIntSnapshotMap.NO_VALUE, map.update(42L, 10));
+		assertEquals(10, map.update(42L, 7));
+		assertEquals(7, map.update(42L, 7));
+		assertEquals(7, map.get(42L));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	void behavesLikeHashMapUnderRandomOperations() {
+		LongIntSnapshotMap map = new LongIntSnapshotMap(16);
+		Map<Long, Integer> expected = new HashMap<>();
+		Random random = new Random(7);
+
+		for (int i = 0; i < 200_000; i++) {
+			long key = random.nextInt(20_000);
+			if (random.nextInt(4) == 0) {
+				Integer removed = expected.remove(key);
+				assertEquals(removed == null ? LongIntSnapshotMap.NO_VALUE : removed, map.remove(key));
+			} else {
+				int value = random.nextInt(1_000);
+				Integer previous = expected.put(key, value);
+				assertEquals(previous == null ? LongIntSnapshotMap.NO_VALUE : previous, map.update(key, value));
+			}
+		}
+
+		assertEquals(expected.size(), map.size());
+		expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+		Map<Long, Integer> visited = new HashMap<>();
+		map.forEach(visited::put);
+		assertEquals(expected, visited);
+		map.clear();
+		assertTrue(map.isEmpty());
+	}
+}
@@ -0,0 +1,71 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The {@link LongIntSnapshotMapTests} cases against the long-valued copy, plus values that only fit a long.
+ */
+class LongLongSnapshotMapTests {
+
+	@Test
+	void updateReturnsPreviousValue() {
+		LongLongSnapshotMap map = new LongLongSnapshotMap(16);
+
+		assertEquals(LongLongSnapshotMap.NO_VALUE, map.update(42L, 10));
+		assertEquals(10, map.update(42L, 7));
+		assertEquals(7, map.update(42L, 7));
+		assertEquals(7, map.get(42L));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	void behavesLikeHashMapUnderRandomOperations() {
+		LongLongSnapshotMap map = new LongLongSnapshotMap(16);
+		Map<Long, Long> expected = new HashMap<>();
+		Random random = new Random(7);
+
+		for (int i = 0; i < 200_000; i++) {
+			long key = random.nextInt(20_000);
+			if (random.nextInt(4) == 0) {
+				Long removed = expected.remove(key);
+				assertEquals(removed == null ? LongLongSnapshotMap.NO_VALUE : removed, map.remove(key));
+			} else {
+				long value = random.nextLong(Long.MIN_VALUE + 1, Long.MAX_VALUE);
+				Long previous = expected.put(key, value);
+				assertEquals(previous == null ? LongLongSnapshotMap.NO_VALUE : previous, map.update(key, value));
+			}
+		}
+
+		assertEquals(expected.size(), map.size());
+		expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+		Map<Long, Long> visited = new HashMap<>();
+		map.forEach(visited::put);
+		assertEquals(expected, visited);
+		map.clear();
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	void keepsValuesBeyondTheIntRangeAcrossResizes() {
+		LongLongSnapshotMap map = new LongLongSnapshotMap(16);
+		// Sparse, negative and consecutive keys, far more than the initial capacity
+		for (long id = -50_000; id < 50_000; id++) {
+			map.update(id * 7_919, id * 1_000_000_007L);
+		}
+
+		assertEquals(100_000, map.size());
+		assertEquals(-50_000L * 1_000_000_007L, map.get(-50_000L * 7_919));
+		assertEquals(49_999L * 1_000_000_007L, map.get(49_999L * 7_919));
+		assertTrue(map.containsKey(0L));
+		assertFalse(map.containsKey(1L));
+		assertEquals(LongLongSnapshotMap.NO_VALUE, map.get(1L));
+	}
+}